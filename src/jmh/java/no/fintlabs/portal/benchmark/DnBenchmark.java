@@ -0,0 +1,54 @@
+package no.fintlabs.portal.benchmark;
+
+import no.fintlabs.portal.model.access.AccessObjectService;
+import no.fintlabs.portal.model.client.ClientObjectService;
+import no.fintlabs.portal.model.component.ComponentService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DN construction in the object services.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DnBenchmark {
+
+    private static final String ORGANISATION_BASE = "ou=organisations,o=fint";
+    private static final String COMPONENT_BASE = "ou=components,o=fint";
+
+    private ClientObjectService clientObjectService;
+    private AccessObjectService accessObjectService;
+    private ComponentService componentService;
+
+    @Setup
+    public void setup() {
+        clientObjectService = new ClientObjectService();
+        clientObjectService.setOrganisationBase(ORGANISATION_BASE);
+        accessObjectService = new AccessObjectService(ORGANISATION_BASE);
+        componentService = new ComponentService();
+        componentService.setComponentBase(COMPONENT_BASE);
+    }
+
+    @Benchmark
+    public String clientDn() {
+        return clientObjectService.getClientDn("client@client.test.no", "test_no");
+    }
+
+    @Benchmark
+    public String accessDn() {
+        return accessObjectService.getAccessDn("access1", "test_no");
+    }
+
+    @Benchmark
+    public String componentDn() {
+        return componentService.getComponentDnByName("administrasjon_personal");
+    }
+}
@@ -0,0 +1,81 @@
+package no.fintlabs.portal.benchmark;
+
+import no.fintlabs.portal.model.asset.Asset;
+import no.fintlabs.portal.model.component.Component;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Linking and unlinking on components and assets with large membership lists.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MembershipBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int members;
+
+    private Component component;
+    private Asset asset;
+    private String newMember;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        component = new Component();
+        asset = new Asset();
+        for (int i = 0; i < members; i++) {
+            component.addClient(clientDn(i));
+            asset.addAdapter(adapterDn(i));
+        }
+        component.getMembershipChanges().clear();
+        asset.getMembershipChanges().clear();
+        newMember = clientDn(members);
+    }
+
+    @Benchmark
+    public Component linkAndUnlinkClientOnComponent() {
+        component.addClient(newMember);
+        component.removeClient(newMember);
+        return component;
+    }
+
+    @Benchmark
+    public Component linkExistingClientOnComponent() {
+        component.addClient(clientDn(members / 2).toUpperCase());
+        return component;
+    }
+
+    @Benchmark
+    public Asset linkAndUnlinkAdapterOnAsset() {
+        asset.addAdapter(newMember);
+        asset.removeAdapter(newMember);
+        return asset;
+    }
+
+    @Benchmark
+    public Component buildComponentMembership() {
+        Component built = new Component();
+        for (int i = 0; i < members; i++) {
+            built.addClient(clientDn(i));
+        }
+        return built;
+    }
+
+    private static String clientDn(int i) {
+        return "cn=client" + i + "@client.test.no,ou=clients,ou=test_no,ou=organisations,o=fint";
+    }
+
+    private static String adapterDn(int i) {
+        return "cn=adapter" + i + "@adapter.test.no,ou=adapters,ou=test_no,ou=organisations,o=fint";
+    }
+}
@@ -0,0 +1,88 @@
+package no.fintlabs.portal.benchmark;
+
+import no.fintlabs.portal.model.client.Client;
+import no.fintlabs.portal.model.component.Component;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.ldap.core.DirContextAdapter;
+import org.springframework.ldap.odm.core.impl.DefaultObjectDirectoryMapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spring LDAP ODM mapping of client and component entries, in both directions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OdmMappingBenchmark {
+
+    @Param({"10", "1000"})
+    private int members;
+
+    private DefaultObjectDirectoryMapper mapper;
+    private Client client;
+    private Component component;
+    private DirContextAdapter clientContext;
+    private DirContextAdapter componentContext;
+
+    @Setup
+    public void setup() {
+        mapper = new DefaultObjectDirectoryMapper();
+        mapper.manageClass(Client.class);
+        mapper.manageClass(Component.class);
+
+        client = new Client();
+        client.setDn("cn=client@client.test.no,ou=clients,ou=test_no,ou=organisations,o=fint");
+        client.setName("client@client.test.no");
+        client.setShortDescription("Benchmark client");
+        client.setNote("Benchmark");
+        client.setClientId("client-id");
+        for (int i = 0; i < members; i++) {
+            client.addComponent("ou=component" + i + ",ou=components,o=fint");
+        }
+
+        component = new Component();
+        component.setDn("ou=component,ou=components,o=fint");
+        component.setName("component");
+        for (int i = 0; i < members; i++) {
+            component.addClient("cn=client" + i + "@client.test.no,ou=clients,ou=test_no,ou=organisations,o=fint");
+            component.addOrganisation("ou=org" + i + ",ou=organisations,o=fint");
+        }
+
+        clientContext = write(client);
+        componentContext = write(component);
+    }
+
+    @Benchmark
+    public DirContextAdapter writeClient() {
+        return write(client);
+    }
+
+    @Benchmark
+    public Client readClient() {
+        return mapper.mapFromLdapDataEntry(clientContext, Client.class);
+    }
+
+    @Benchmark
+    public DirContextAdapter writeComponent() {
+        return write(component);
+    }
+
+    @Benchmark
+    public Component readComponent() {
+        return mapper.mapFromLdapDataEntry(componentContext, Component.class);
+    }
+
+    private DirContextAdapter write(Object entry) {
+        DirContextAdapter context = new DirContextAdapter(mapper.getId(entry));
+        mapper.mapToLdapDataEntry(entry, context);
+        return context;
+    }
+}
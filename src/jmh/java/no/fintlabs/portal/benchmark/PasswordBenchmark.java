@@ -0,0 +1,24 @@
+package no.fintlabs.portal.benchmark;
+
+import no.fintlabs.portal.utilities.PasswordUtility;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PasswordBenchmark {
+
+    @Benchmark
+    public String generateSecret() {
+        return PasswordUtility.generateSecret();
+    }
+
+    @Benchmark
+    public String newPassword() {
+        return PasswordUtility.newPassword();
+    }
+}
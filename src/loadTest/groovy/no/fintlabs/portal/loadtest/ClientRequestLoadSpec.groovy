@@ -0,0 +1,207 @@
+package no.fintlabs.portal.loadtest
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializationFeature
+import groovy.util.logging.Slf4j
+import no.fintlabs.portal.model.client.Client
+import no.fintlabs.portal.model.client.ClientReply
+import no.fintlabs.portal.model.client.ClientRequest
+import no.fintlabs.portal.model.client.ClientService
+import no.fintlabs.portal.model.component.Component
+import no.fintlabs.portal.model.component.ComponentService
+import no.fintlabs.portal.model.organisation.Organisation
+import no.fintlabs.portal.model.organisation.OrganisationService
+import org.apache.kafka.clients.producer.ProducerRecord
+import org.apache.kafka.common.serialization.StringDeserializer
+import org.apache.kafka.common.serialization.StringSerializer
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.context.ApplicationContext
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory
+import org.springframework.kafka.core.DefaultKafkaProducerFactory
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer
+import org.springframework.kafka.listener.ContainerProperties
+import org.springframework.kafka.listener.KafkaMessageListenerContainer
+import org.springframework.kafka.requestreply.ReplyingKafkaTemplate
+import org.springframework.kafka.support.serializer.JsonDeserializer
+import org.springframework.kafka.support.serializer.JsonSerializer
+import org.springframework.kafka.test.EmbeddedKafkaBroker
+import org.springframework.kafka.test.context.EmbeddedKafka
+import org.springframework.kafka.test.utils.ContainerTestUtils
+import org.springframework.kafka.test.utils.KafkaTestUtils
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.context.ContextConfiguration
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Drives create, update, get and delete client requests through the request-reply topics and reports throughput,
+ * latency percentiles and LDAP operations per request to {@code build/reports/load-test/client-requests.json}.
+ * <p>
+ * Sized with {@code -Ploadtest.organisations}, {@code loadtest.components}, {@code loadtest.seed-clients},
+ * {@code loadtest.clients} and {@code loadtest.concurrency}.
+ */
+@Slf4j
+@ActiveProfiles("loadtest")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ContextConfiguration(initializers = LoadTestEnvironment)
+@EmbeddedKafka(partitions = 1, topics = LoadTestEnvironment.REPLY_TOPIC, bootstrapServersProperty = "spring.kafka.bootstrap-servers")
+class ClientRequestLoadSpec extends Specification {
+
+    private static final int ORGANISATIONS = Integer.getInteger("loadtest.organisations", 10)
+    private static final int COMPONENTS = Integer.getInteger("loadtest.components", 20)
+    private static final int SEED_CLIENTS = Integer.getInteger("loadtest.seed-clients", 20)
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 200)
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 8)
+    private static final Duration REPLY_TIMEOUT = Duration.ofSeconds(30)
+
+    @Autowired
+    ApplicationContext context
+
+    @Autowired
+    EmbeddedKafkaBroker broker
+
+    @Autowired
+    OrganisationService organisationService
+
+    @Autowired
+    ComponentService componentService
+
+    @Autowired
+    ClientService clientService
+
+    ReplyingKafkaTemplate<String, ClientRequest, ClientReply> template
+
+    def setup() {
+        def producerFactory = new DefaultKafkaProducerFactory<String, ClientRequest>(
+                KafkaTestUtils.producerProps(broker), new StringSerializer(), new JsonSerializer<ClientRequest>().noTypeInfo())
+        def consumerFactory = new DefaultKafkaConsumerFactory<String, ClientReply>(
+                KafkaTestUtils.consumerProps("loadtest", "false", broker), new StringDeserializer(), new JsonDeserializer<>(ClientReply, false))
+        def replyContainer = new KafkaMessageListenerContainer<>(consumerFactory, new ContainerProperties(LoadTestEnvironment.REPLY_TOPIC))
+
+        template = new ReplyingKafkaTemplate<>(producerFactory, replyContainer)
+        template.setDefaultReplyTimeout(REPLY_TIMEOUT)
+        template.start()
+
+        ContainerTestUtils.waitForAssignment(replyContainer, 1)
+        ["create", "update", "get", "delete"].each {
+            ContainerTestUtils.waitForAssignment(requestContainer(it), 1)
+        }
+    }
+
+    def cleanup() {
+        template.stop()
+    }
+
+    def "Client request-reply load"() {
+        given:
+        def components = seedComponents()
+        def organisations = seedOrganisations(components)
+        log.info("Directory seeded with {} entries", LoadTestEnvironment.directory().entryCount)
+
+        def requests = (0..<CLIENTS).collect {
+            def organisation = organisations[it % organisations.size()]
+            new ClientRequest(
+                    name: "load-client-" + it,
+                    note: "Load test",
+                    shortDescription: "Load test client " + it,
+                    orgId: organisation.name,
+                    components: pick(components, it, 2)*.name
+            )
+        }
+
+        when:
+        def phases = [
+                run("create", requests),
+                run("update", requests.collect {
+                    new ClientRequest(
+                            name: it.name,
+                            note: "Load test, updated",
+                            shortDescription: it.shortDescription,
+                            orgId: it.orgId,
+                            components: pick(components, it.name.hashCode(), 3)*.name
+                    )
+                }),
+                run("get", requests),
+                run("delete", requests)
+        ]
+        writeReport(phases)
+
+        then:
+        phases.every { it.failures == 0 }
+    }
+
+    private LoadTestPhase run(String name, List<ClientRequest> requests) {
+        def phase = new LoadTestPhase(name)
+        def topic = requestContainer(name).containerProperties.topics[0]
+        def executor = Executors.newFixedThreadPool(CONCURRENCY)
+
+        phase.start()
+        requests.each { request ->
+            executor.submit({
+                long start = System.nanoTime()
+                try {
+                    template.sendAndReceive(new ProducerRecord<>(topic, request.orgId, request))
+                            .get(REPLY_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                    phase.record(System.nanoTime() - start)
+                } catch (Exception e) {
+                    log.warn("{} of {} failed: {}", name, request.name, e.message)
+                    phase.fail()
+                }
+            } as Runnable)
+        }
+        executor.shutdown()
+        executor.awaitTermination(requests.size() * REPLY_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+        phase.stop()
+
+        log.info("{}", phase.toReport())
+        return phase
+    }
+
+    private ConcurrentMessageListenerContainer requestContainer(String name) {
+        context.getBean(name, ConcurrentMessageListenerContainer)
+    }
+
+    private List<Component> seedComponents() {
+        (0..<COMPONENTS).collect {
+            def component = new Component(name: "load_component_" + it, description: "Load test component " + it, basePath: "/load/component" + it)
+            componentService.createComponent(component)
+            component
+        }
+    }
+
+    private List<Organisation> seedOrganisations(List<Component> components) {
+        (0..<ORGANISATIONS).collect { index ->
+            def organisation = new Organisation(name: "load" + index + "_no", displayName: "Load test " + index, orgNumber: String.valueOf(900000000 + index))
+            organisationService.createOrganisation(organisation)
+            organisation = organisationService.getOrganisation(organisation.name).orElseThrow()
+
+            components.each { organisationService.linkComponent(organisation, it) }
+            clientService.addClients((0..<SEED_CLIENTS).collect {
+                new Client(name: "seed-client-" + it, shortDescription: "Seed client " + it, note: "Load test")
+            }, organisation)
+            organisation
+        }
+    }
+
+    private static List<Component> pick(List<Component> components, int seed, int count) {
+        (0..<count).collect { components[Math.floorMod(seed + it * 7, components.size())] }.unique()
+    }
+
+    private static void writeReport(List<LoadTestPhase> phases) {
+        def report = new File("build/reports/load-test/client-requests.json")
+        report.parentFile.mkdirs()
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report, [
+                organisations: ORGANISATIONS,
+                components   : COMPONENTS,
+                seedClients  : SEED_CLIENTS,
+                clients      : CLIENTS,
+                concurrency  : CONCURRENCY,
+                phases       : phases*.toReport()
+        ])
+        log.info("Load test report written to {}", report.absolutePath)
+    }
+}
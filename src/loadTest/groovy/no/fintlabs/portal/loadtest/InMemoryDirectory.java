@@ -0,0 +1,109 @@
+package no.fintlabs.portal.loadtest;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.InMemoryListenerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedAddRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedDeleteRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedModifyRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSimpleBindRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.schema.Schema;
+import com.unboundid.ldif.LDIFException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * UnboundID in-memory directory with the fint schema and the base containers, counting the operations it serves.
+ */
+public class InMemoryDirectory {
+
+    public static final String BASE = "o=fint";
+    public static final String BIND_DN = "cn=admin," + BASE;
+    public static final String BIND_PASSWORD = "loadtest";
+
+    private static final String[] CONTAINERS = {"organisations", "components", "contacts", "access"};
+
+    private final InMemoryDirectoryServer server;
+    private final Map<String, LongAdder> operations = new LinkedHashMap<>();
+
+    public InMemoryDirectory() throws LDAPException, LDIFException, IOException {
+        for (String operation : new String[]{"search", "add", "modify", "delete", "bind"}) {
+            operations.put(operation, new LongAdder());
+        }
+
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE);
+        config.addAdditionalBindCredentials(BIND_DN, BIND_PASSWORD);
+        config.setListenerConfigs(InMemoryListenerConfig.createLDAPConfig("default", 0));
+        config.setSchema(Schema.mergeSchemas(Schema.getDefaultStandardSchema(), fintSchema()));
+        config.addInMemoryOperationInterceptor(new OperationCounter());
+
+        server = new InMemoryDirectoryServer(config);
+        server.add("dn: " + BASE, "objectClass: top", "objectClass: organization", "o: fint");
+        for (String container : CONTAINERS) {
+            server.add("dn: ou=" + container + "," + BASE, "objectClass: top", "objectClass: organizationalUnit", "ou: " + container);
+        }
+        server.startListening();
+    }
+
+    private static Schema fintSchema() throws LDIFException, IOException {
+        try (InputStream schema = InMemoryDirectory.class.getResourceAsStream("/ldap/fint-schema.ldif")) {
+            return Schema.getSchema(schema);
+        }
+    }
+
+    public String getUrl() {
+        return "ldap://localhost:" + server.getListenPort();
+    }
+
+    public int getEntryCount() {
+        return server.countEntries();
+    }
+
+    /**
+     * Operations served so far, by type.
+     */
+    public Map<String, Long> getOperations() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        operations.forEach((operation, count) -> counts.put(operation, count.sum()));
+        return counts;
+    }
+
+    public void shutDown() {
+        server.shutDown(true);
+    }
+
+    private class OperationCounter extends InMemoryOperationInterceptor {
+
+        @Override
+        public void processSearchRequest(InMemoryInterceptedSearchRequest request) {
+            operations.get("search").increment();
+        }
+
+        @Override
+        public void processAddRequest(InMemoryInterceptedAddRequest request) {
+            operations.get("add").increment();
+        }
+
+        @Override
+        public void processModifyRequest(InMemoryInterceptedModifyRequest request) {
+            operations.get("modify").increment();
+        }
+
+        @Override
+        public void processDeleteRequest(InMemoryInterceptedDeleteRequest request) {
+            operations.get("delete").increment();
+        }
+
+        @Override
+        public void processSimpleBindRequest(InMemoryInterceptedSimpleBindRequest request) {
+            operations.get("bind").increment();
+        }
+    }
+}
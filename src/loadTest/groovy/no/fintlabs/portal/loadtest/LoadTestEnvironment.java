@@ -0,0 +1,63 @@
+package no.fintlabs.portal.loadtest;
+
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Points the application at the in-memory directory and the NAM stub. Both are started once per JVM and shared by
+ * all load-test contexts.
+ */
+public class LoadTestEnvironment implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+    public static final String REPLY_TOPIC = "loadtest-client-reply";
+
+    private static InMemoryDirectory directory;
+    private static NamStub namStub;
+
+    public static synchronized InMemoryDirectory directory() {
+        if (directory == null) {
+            try {
+                directory = new InMemoryDirectory();
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to start in-memory directory", e);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(directory::shutDown));
+        }
+        return directory;
+    }
+
+    public static synchronized NamStub namStub() {
+        if (namStub == null) {
+            try {
+                namStub = new NamStub();
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to start NAM stub", e);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(namStub::stop));
+        }
+        return namStub;
+    }
+
+    @Override
+    public void initialize(ConfigurableApplicationContext context) {
+        TestPropertyValues.of(
+                "fint.ldap.url=" + directory().getUrl(),
+                "fint.ldap.user=" + InMemoryDirectory.BIND_DN,
+                "fint.ldap.password=" + InMemoryDirectory.BIND_PASSWORD,
+                "fint.nam.oauth.idp-hostname=" + NamStub.HOSTNAME
+        ).applyTo(context);
+
+        int port = namStub().getPort();
+        WebClientCustomizer namStubRouting = builder -> builder.filter((request, next) -> next.exchange(
+                NamStub.HOSTNAME.equals(request.url().getHost())
+                        ? ClientRequest.from(request)
+                        .url(UriComponentsBuilder.fromUri(request.url()).scheme("http").host("localhost").port(port).build(true).toUri())
+                        .build()
+                        : request));
+        context.getBeanFactory().registerSingleton("namStubRouting", namStubRouting);
+    }
+}
@@ -0,0 +1,95 @@
+package no.fintlabs.portal.loadtest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and failures of one kind of request, and the directory and NAM traffic it caused.
+ */
+public class LoadTestPhase {
+
+    private final String name;
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+    private final LongAdder failures = new LongAdder();
+
+    private long startedAt;
+    private Duration duration;
+    private Map<String, Long> ldapOperationsBefore;
+    private Map<String, Long> ldapOperations;
+    private long namRequestsBefore;
+    private long namRequests;
+
+    public LoadTestPhase(String name) {
+        this.name = name;
+    }
+
+    public void start() {
+        ldapOperationsBefore = LoadTestEnvironment.directory().getOperations();
+        namRequestsBefore = LoadTestEnvironment.namStub().getRequests();
+        startedAt = System.nanoTime();
+    }
+
+    public void stop() {
+        duration = Duration.ofNanos(System.nanoTime() - startedAt);
+        ldapOperations = new LinkedHashMap<>();
+        LoadTestEnvironment.directory().getOperations()
+                .forEach((operation, count) -> ldapOperations.put(operation, count - ldapOperationsBefore.get(operation)));
+        namRequests = LoadTestEnvironment.namStub().getRequests() - namRequestsBefore;
+    }
+
+    public void record(long latencyNanos) {
+        latencies.add(latencyNanos);
+    }
+
+    public void fail() {
+        failures.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public Map<String, Object> toReport() {
+        List<Long> sorted;
+        synchronized (latencies) {
+            sorted = new ArrayList<>(latencies);
+        }
+        Collections.sort(sorted);
+        long requests = sorted.size() + getFailures();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("phase", name);
+        report.put("requests", requests);
+        report.put("failures", getFailures());
+        report.put("durationMs", duration.toMillis());
+        report.put("throughputPerSecond", requests * 1e9 / duration.toNanos());
+        Map<String, Double> latency = new LinkedHashMap<>();
+        latency.put("p50", percentile(sorted, 50));
+        latency.put("p90", percentile(sorted, 90));
+        latency.put("p99", percentile(sorted, 99));
+        latency.put("max", percentile(sorted, 100));
+        report.put("latencyMs", latency);
+        Map<String, Double> ldapPerRequest = new LinkedHashMap<>();
+        ldapOperations.forEach((operation, count) -> ldapPerRequest.put(operation, requests == 0 ? 0 : (double) count / requests));
+        report.put("ldapOperationsPerRequest", ldapPerRequest);
+        report.put("namRequestsPerRequest", requests == 0 ? 0 : (double) namRequests / requests);
+        return report;
+    }
+
+    private static double percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(index, 0)) / 1e6;
+    }
+}
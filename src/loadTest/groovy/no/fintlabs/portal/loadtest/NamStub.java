@@ -0,0 +1,95 @@
+package no.fintlabs.portal.loadtest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local stand-in for the NAM token and client registration endpoints. Registered clients are kept in memory so they
+ * can be fetched and deleted again.
+ */
+public class NamStub {
+
+    public static final String HOSTNAME = "nam.loadtest";
+
+    private static final String TOKEN_PATH = "/nidp/oauth/nam/token";
+    private static final String CLIENTS_PATH = "/nidp/oauth/nam/clients/";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Map<String, Object>> clients = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private final HttpServer server;
+
+    public NamStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        String path = exchange.getRequestURI().getPath().replaceAll("/+", "/");
+        String method = exchange.getRequestMethod();
+
+        try (exchange) {
+            if (path.equals(TOKEN_PATH) && method.equals("POST")) {
+                respond(exchange, 200, Map.of("access_token", UUID.randomUUID().toString(), "expires_in", 3600));
+            } else if (path.equals(CLIENTS_PATH) && method.equals("POST")) {
+                Map<String, Object> client = objectMapper.readValue(exchange.getRequestBody(), new TypeReference<>() {
+                });
+                String clientId = UUID.randomUUID().toString();
+                client.put("client_id", clientId);
+                client.put("client_secret", UUID.randomUUID().toString());
+                clients.put(clientId, client);
+                respond(exchange, 200, client);
+            } else if (path.startsWith(CLIENTS_PATH)) {
+                String clientId = path.substring(CLIENTS_PATH.length());
+                Map<String, Object> client = method.equals("DELETE") ? clients.remove(clientId) : clients.get(clientId);
+                if (client == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else if (method.equals("DELETE")) {
+                    exchange.sendResponseHeaders(200, -1);
+                } else {
+                    respond(exchange, 200, client);
+                }
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+}
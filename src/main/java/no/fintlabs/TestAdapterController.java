@@ -2,14 +2,13 @@ package no.fintlabs;
 
 import no.fintlabs.portal.model.adapter.Adapter;
 import no.fintlabs.portal.model.adapter.AdapterService;
-import no.fintlabs.portal.model.organisation.Organisation;
 import no.fintlabs.portal.model.organisation.OrganisationService;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-
-import java.util.Optional;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 @RestController
 @RequestMapping("test")
@@ -24,31 +23,28 @@ public class TestAdapterController {
     }
 
     @PostMapping("adapter/{orgName}")
-    public ResponseEntity<Adapter> addAdapter(@PathVariable("orgName") final String orgName,
-                                              @RequestBody final Adapter adapter) {
-
-        Optional<Organisation> organisation = organisationService.getOrganisation(orgName);
-
-        Optional<Adapter> optionalAdapter = adapterService.getAdapter(adapter.getName(), orgName);
-        if (!optionalAdapter.isPresent()) {
-            if (adapterService.addAdapter(adapter, organisation.get())) {
-
-                return ResponseEntity.status(HttpStatus.CREATED).cacheControl(CacheControl.noStore()).body(adapter);
-            }
-        }
-
-        return ResponseEntity.ok().build();
+    public Mono<ResponseEntity<Adapter>> addAdapter(@PathVariable("orgName") final String orgName,
+                                                    @RequestBody final Adapter adapter) {
+
+        return adapterService.findAdapter(adapter.getName(), orgName)
+                .map(existing -> ResponseEntity.ok().<Adapter>build())
+                .switchIfEmpty(Mono.defer(() -> organisationService.findOrganisation(orgName)
+                        .flatMap(organisation -> Mono.fromCallable(() -> adapterService.addAdapter(adapter, organisation))
+                                .subscribeOn(Schedulers.boundedElastic()))
+                        .map(added -> added
+                                ? ResponseEntity.status(HttpStatus.CREATED).cacheControl(CacheControl.noStore()).body(adapter)
+                                : ResponseEntity.ok().<Adapter>build())
+                        .defaultIfEmpty(ResponseEntity.notFound().build())));
     }
 
     @DeleteMapping("adapter/{orgName}/{adapterName}")
-    public ResponseEntity<Void> deleteAdapter(@PathVariable("orgName") final String orgName,
-                                              @PathVariable final String adapterName) {
-        Optional<Organisation> organisation = organisationService.getOrganisation(orgName);
-        Optional<Adapter> adapter = adapterService.getAdapter(adapterName, organisation.get().getName());
-
-        adapterService.deleteAdapter(adapter.get());
-        return ResponseEntity.noContent().cacheControl(CacheControl.noStore()).build();
+    public Mono<ResponseEntity<Void>> deleteAdapter(@PathVariable("orgName") final String orgName,
+                                                    @PathVariable final String adapterName) {
+        return adapterService.findAdapter(adapterName, orgName)
+                .flatMap(adapter -> Mono.fromRunnable(() -> adapterService.deleteAdapter(adapter))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .thenReturn(ResponseEntity.noContent().cacheControl(CacheControl.noStore()).<Void>build()))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
-
 }
@@ -4,6 +4,8 @@ import no.fintlabs.portal.model.organisation.Organisation;
 import no.fintlabs.portal.model.organisation.OrganisationService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 @RestController
 @RequestMapping("test/organisation")
@@ -17,14 +19,19 @@ public class TestOrganisationController {
 
     // {name: "test.no", orgNumber: "123456789", displayName: "Test"}
     @GetMapping
-    public ResponseEntity<Void> createOrganisation() {
+    public Mono<ResponseEntity<Void>> createOrganisation() {
         Organisation organisation = new Organisation();
 
         organisation.setName("egil.no");
         organisation.setOrgNumber("123456789");
         organisation.setDisplayName("The Egil Company");
-        organisationService.createOrganisation(organisation);
 
-        return ResponseEntity.ok().build();
+        return organisationService.findOrganisation(organisation.getName())
+                .hasElement()
+                .flatMap(exists -> exists
+                        ? Mono.just(false)
+                        : Mono.fromCallable(() -> organisationService.createOrganisation(organisation))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                .thenReturn(ResponseEntity.ok().<Void>build());
     }
 }
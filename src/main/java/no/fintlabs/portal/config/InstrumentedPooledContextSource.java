@@ -0,0 +1,51 @@
+package no.fintlabs.portal.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
+import org.springframework.ldap.pool2.factory.PoolConfig;
+import org.springframework.ldap.pool2.factory.PooledContextSource;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pooled context source publishing the state of its connection pool as {@code ldap.pool.*} gauges, tagged with the
+ * name of the pool.
+ */
+public class InstrumentedPooledContextSource extends PooledContextSource implements MeterBinder {
+
+    private final String name;
+
+    public InstrumentedPooledContextSource(PoolConfig poolConfig, String name) {
+        super(poolConfig);
+        this.name = name;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GenericKeyedObjectPool<Object, Object> pool = keyedObjectPool;
+
+        Gauge.builder("ldap.pool.active", pool, GenericKeyedObjectPool::getNumActive)
+                .description("Connections borrowed from the pool")
+                .tag("pool", name)
+                .register(registry);
+        Gauge.builder("ldap.pool.idle", pool, GenericKeyedObjectPool::getNumIdle)
+                .description("Idle connections in the pool")
+                .tag("pool", name)
+                .register(registry);
+        Gauge.builder("ldap.pool.waiters", pool, GenericKeyedObjectPool::getNumWaiters)
+                .description("Threads waiting to borrow a connection")
+                .tag("pool", name)
+                .register(registry);
+        TimeGauge.builder("ldap.pool.borrow.wait.mean", pool, TimeUnit.MILLISECONDS, GenericKeyedObjectPool::getMeanBorrowWaitTimeMillis)
+                .description("Mean time spent waiting for a connection")
+                .tag("pool", name)
+                .register(registry);
+        TimeGauge.builder("ldap.pool.borrow.wait.max", pool, TimeUnit.MILLISECONDS, GenericKeyedObjectPool::getMaxBorrowWaitTimeMillis)
+                .description("Longest time spent waiting for a connection")
+                .tag("pool", name)
+                .register(registry);
+    }
+}
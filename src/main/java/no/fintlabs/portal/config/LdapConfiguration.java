@@ -1,6 +1,10 @@
 package no.fintlabs.portal.config;
 
-
+import lombok.extern.slf4j.Slf4j;
+import no.fintlabs.portal.ldap.ReadYourWrites;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
@@ -10,11 +14,24 @@ import org.springframework.ldap.core.support.LdapContextSource;
 import org.springframework.ldap.pool2.factory.PoolConfig;
 import org.springframework.ldap.pool2.factory.PooledContextSource;
 import org.springframework.ldap.pool2.validation.DefaultDirContextValidator;
+import org.springframework.ldap.support.LdapUtils;
 import org.springframework.ldap.transaction.compensating.manager.TransactionAwareContextSourceProxy;
 
+import javax.naming.directory.DirContext;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Slf4j
 @Configuration
 public class LdapConfiguration {
 
+    private static final String CONNECT_TIMEOUT = "com.sun.jndi.ldap.connect.timeout";
+
     private final Environment env;
 
     public LdapConfiguration(Environment env) {
@@ -30,28 +47,108 @@ public class LdapConfiguration {
         contextSource.setUrl(env.getRequiredProperty("fint.ldap.url"));
         contextSource.setUserDn(env.getRequiredProperty("fint.ldap.user"));
         contextSource.setPassword(env.getRequiredProperty("fint.ldap.password"));
+        contextSource.setBaseEnvironmentProperties(baseEnvironment());
         return contextSource;
     }
 
     @Bean
-    public ContextSource poolingLdapContextSource() {
+    public InstrumentedPooledContextSource pooledContextSource() {
+        return pooled(contextSource(), "master");
+    }
+
+    /**
+     * Read replicas, used when {@code fint.ldap.replica.urls} lists them. Each replica gets a pool configured like
+     * the master's, and binds with the master's credentials unless {@code fint.ldap.replica.user} is set.
+     */
+    @Bean
+    @ConditionalOnProperty("fint.ldap.replica.urls")
+    public ReplicaRoutingContextSource replicaRoutingContextSource(ReadYourWrites readYourWrites) {
+        List<InstrumentedPooledContextSource> replicas = Arrays.stream(env.getRequiredProperty("fint.ldap.replica.urls", String[].class))
+                .map(String::trim)
+                .map(url -> pooled(replicaContextSource(url), url))
+                .collect(Collectors.toList());
+        log.info("Reading from {} LDAP replicas", replicas.size());
+        return new ReplicaRoutingContextSource(pooledContextSource(), replicas, readYourWrites);
+    }
+
+    private LdapContextSource replicaContextSource(String url) {
+        LdapContextSource contextSource = new LdapContextSource();
+        contextSource.setUrl(url);
+        contextSource.setUserDn(env.getProperty("fint.ldap.replica.user", env.getRequiredProperty("fint.ldap.user")));
+        contextSource.setPassword(env.getProperty("fint.ldap.replica.password", env.getRequiredProperty("fint.ldap.password")));
+        contextSource.setBaseEnvironmentProperties(baseEnvironment());
+        contextSource.afterPropertiesSet();
+        return contextSource;
+    }
+
+    /**
+     * Opening a connection gives up after {@code fint.ldap.connect-timeout}, so an unreachable directory does not
+     * hold up startup while the pools are warmed up. No read timeout is set, since the directory graph keeps
+     * persistent searches open.
+     */
+    private Map<String, Object> baseEnvironment() {
+        Map<String, Object> environment = new HashMap<>();
+        environment.put(CONNECT_TIMEOUT, String.valueOf(env.getProperty("fint.ldap.connect-timeout", Duration.class, Duration.ofSeconds(5)).toMillis()));
+        return environment;
+    }
+
+    /**
+     * Connections are validated while idle rather than on every borrow, and evicted once idle for longer than
+     * {@code min-evictable-idle-time}. Borrowers wait at most {@code max-wait} for a connection when the pool is
+     * exhausted.
+     */
+    private InstrumentedPooledContextSource pooled(ContextSource contextSource, String name) {
 
         PoolConfig poolConfig = new PoolConfig();
-        poolConfig.setTestOnBorrow(true);
-        poolConfig.setTestWhileIdle(true);
-        poolConfig.setTimeBetweenEvictionRunsMillis(60000);
-        poolConfig.setMaxTotalPerKey(-1);
-        poolConfig.setMaxIdlePerKey(-1);
-        PooledContextSource pooledContextSource = new PooledContextSource(poolConfig);
-        pooledContextSource.setContextSource(contextSource());
+        poolConfig.setMaxTotal(env.getProperty("fint.ldap.pool.max-total", Integer.class, 32));
+        poolConfig.setMaxTotalPerKey(env.getProperty("fint.ldap.pool.max-total-per-key", Integer.class, 24));
+        poolConfig.setMaxIdlePerKey(env.getProperty("fint.ldap.pool.max-idle-per-key", Integer.class, 8));
+        poolConfig.setMinIdlePerKey(env.getProperty("fint.ldap.pool.min-idle-per-key", Integer.class, 2));
+        poolConfig.setBlockWhenExhausted(env.getProperty("fint.ldap.pool.block-when-exhausted", Boolean.class, true));
+        poolConfig.setMaxWaitMillis(env.getProperty("fint.ldap.pool.max-wait", Duration.class, Duration.ofSeconds(5)).toMillis());
+        poolConfig.setTestOnBorrow(env.getProperty("fint.ldap.pool.test-on-borrow", Boolean.class, false));
+        poolConfig.setTestWhileIdle(env.getProperty("fint.ldap.pool.test-while-idle", Boolean.class, true));
+        poolConfig.setTimeBetweenEvictionRunsMillis(env.getProperty("fint.ldap.pool.time-between-eviction-runs", Duration.class, Duration.ofSeconds(30)).toMillis());
+        poolConfig.setMinEvictableIdleTimeMillis(env.getProperty("fint.ldap.pool.min-evictable-idle-time", Duration.class, Duration.ofMinutes(10)).toMillis());
+        poolConfig.setNumTestsPerEvictionRun(env.getProperty("fint.ldap.pool.num-tests-per-eviction-run", Integer.class, 4));
+        InstrumentedPooledContextSource pooledContextSource = new InstrumentedPooledContextSource(poolConfig, name);
+        pooledContextSource.setContextSource(contextSource);
         pooledContextSource.setDirContextValidator(new DefaultDirContextValidator());
 
-        return new TransactionAwareContextSourceProxy(pooledContextSource);
+        warmUp(pooledContextSource, name, env.getProperty("fint.ldap.pool.initial-size", Integer.class, 4));
+
+        return pooledContextSource;
+    }
+
+    /**
+     * Opens the given number of read-only and read-write connections and returns them to the pool, so the first
+     * requests after startup do not pay for connection setup. A directory that is not reachable yet is logged, not
+     * fatal.
+     */
+    private void warmUp(PooledContextSource pooledContextSource, String name, int connections) {
+        List<DirContext> contexts = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                contexts.add(pooledContextSource.getReadOnlyContext());
+                contexts.add(pooledContextSource.getReadWriteContext());
+            }
+            log.info("Opened {} LDAP connections to {}", contexts.size(), name);
+        } catch (RuntimeException e) {
+            log.warn("Unable to open LDAP connections to {} at startup: {}", name, e.getMessage());
+        } finally {
+            contexts.forEach(LdapUtils::closeContext);
+        }
+    }
+
+    @Bean
+    public ContextSource poolingLdapContextSource(ObjectProvider<ReplicaRoutingContextSource> replicaRoutingContextSource) {
+        ContextSource replicaRouting = replicaRoutingContextSource.getIfAvailable();
+        return new TransactionAwareContextSourceProxy(replicaRouting != null ? replicaRouting : pooledContextSource());
     }
 
     @Bean
-    public LdapTemplate ldapTemplate() {
-        return new LdapTemplate(poolingLdapContextSource());
+    public LdapTemplate ldapTemplate(@Qualifier("poolingLdapContextSource") ContextSource poolingLdapContextSource) {
+        return new LdapTemplate(poolingLdapContextSource);
     }
 
 }
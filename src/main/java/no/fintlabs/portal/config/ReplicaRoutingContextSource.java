@@ -0,0 +1,74 @@
+package no.fintlabs.portal.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import no.fintlabs.portal.ldap.ReadYourWrites;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.ldap.NamingException;
+import org.springframework.ldap.core.ContextSource;
+import org.springframework.ldap.pool2.factory.PooledContextSource;
+
+import javax.naming.directory.DirContext;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends reads to the read replicas, round robin, and writes to the master. Reads on a thread that wrote within the
+ * read-your-writes window go to the master, and so do reads when no replica can be reached. The pools report a
+ * replica they cannot open a connection to as a {@link DataAccessResourceFailureException}.
+ */
+@Slf4j
+public class ReplicaRoutingContextSource implements ContextSource, MeterBinder, DisposableBean {
+
+    private final InstrumentedPooledContextSource master;
+    private final List<InstrumentedPooledContextSource> replicas;
+    private final ReadYourWrites readYourWrites;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingContextSource(InstrumentedPooledContextSource master, List<InstrumentedPooledContextSource> replicas, ReadYourWrites readYourWrites) {
+        this.master = master;
+        this.replicas = replicas;
+        this.readYourWrites = readYourWrites;
+    }
+
+    @Override
+    public DirContext getReadOnlyContext() {
+        if (readYourWrites.isWithinWindow()) {
+            return master.getReadOnlyContext();
+        }
+        int first = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            try {
+                return replicas.get((first + i) % replicas.size()).getReadOnlyContext();
+            } catch (DataAccessResourceFailureException | NamingException e) {
+                log.warn("Read replica unavailable: {}", e.getMessage());
+            }
+        }
+        return master.getReadOnlyContext();
+    }
+
+    @Override
+    public DirContext getReadWriteContext() {
+        readYourWrites.written();
+        return master.getReadWriteContext();
+    }
+
+    @Override
+    public DirContext getContext(String principal, String credentials) {
+        return master.getContext(principal, credentials);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        replicas.forEach(replica -> replica.bindTo(registry));
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (PooledContextSource replica : replicas) {
+            replica.destroy();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package no.fintlabs.portal.ldap;
+
+import lombok.Data;
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * The fint entries in the directory and the links between them.
+ * <p>
+ * Entries are indexed by normalized DN, by parent, by the entries each link attribute points to and by the entries
+ * pointing to them. The parent index also holds the containers between the entries, such as {@code ou=clients},
+ * so everything below a base is found by walking down from it. Changes update only the indexes of the entries they
+ * touch, under a write lock, so readers never see a partly applied change. Entries are handed out as copies, like
+ * {@link LdapEntryCache} does.
+ */
+public final class DirectoryGraph {
+
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Map<String, Set<String>> children = new HashMap<>();
+    private final Map<String, Map<String, Set<String>>> backlinks = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public static DirectoryGraph of(Collection<Node> nodes) {
+        DirectoryGraph graph = new DirectoryGraph();
+        graph.apply(nodes, Collections.emptyList());
+        return graph;
+    }
+
+    /**
+     * Adds or replaces the given entries and removes the given entries, and everything below them. Removals are
+     * applied first.
+     */
+    public void apply(Collection<Node> updated, Collection<String> removed) {
+        lock.writeLock().lock();
+        try {
+            removed.stream().map(DnList::normalize).forEach(this::removeSubtree);
+            updated.forEach(this::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        return read(nodes::size);
+    }
+
+    public boolean contains(String dn) {
+        return dn != null && read(() -> nodes.containsKey(DnList.normalize(dn)));
+    }
+
+    public <T> Optional<T> get(String dn, Class<T> type) {
+        return dn == null ? Optional.empty() : read(() -> Optional.ofNullable(copy(nodes.get(DnList.normalize(dn)), type)));
+    }
+
+    /**
+     * The entries of the given type the attribute of the entry points to.
+     */
+    public <T> List<T> getLinks(String dn, String attribute, Class<T> type) {
+        if (dn == null) {
+            return Collections.emptyList();
+        }
+        return read(() -> {
+            Node node = nodes.get(DnList.normalize(dn));
+            if (node == null) {
+                return Collections.emptyList();
+            }
+            return copies(node.getLinks().getOrDefault(attribute, Collections.emptySet()), type);
+        });
+    }
+
+    /**
+     * The entries of the given type whose attribute points to the entry.
+     */
+    public <T> List<T> getBacklinks(String dn, String attribute, Class<T> type) {
+        if (dn == null) {
+            return Collections.emptyList();
+        }
+        return read(() -> copies(backlinks.getOrDefault(DnList.normalize(dn), Collections.emptyMap())
+                .getOrDefault(attribute, Collections.emptySet()), type));
+    }
+
+    /**
+     * The entries of the given type below the base, in no particular order.
+     */
+    public <T> List<T> getAll(String base, Class<T> type) {
+        return read(() -> copies(below(DnList.normalize(base)), type));
+    }
+
+    private void put(Node node) {
+        Node previous = nodes.put(node.getDn(), node);
+        if (previous != null) {
+            unlink(previous);
+        } else {
+            addChild(node.getDn());
+        }
+        node.getLinks().forEach((attribute, targets) -> targets.forEach(target ->
+                backlinks.computeIfAbsent(target, dn -> new HashMap<>())
+                        .computeIfAbsent(attribute, a -> new LinkedHashSet<>())
+                        .add(node.getDn())));
+    }
+
+    private void removeSubtree(String dn) {
+        Set<String> subtree = below(dn);
+        subtree.add(dn);
+        subtree.forEach(removed -> {
+            Node node = nodes.remove(removed);
+            if (node != null) {
+                unlink(node);
+            }
+            children.remove(removed);
+        });
+        removeChild(dn);
+    }
+
+    private void unlink(Node node) {
+        node.getLinks().forEach((attribute, targets) -> targets.forEach(target -> {
+            Map<String, Set<String>> attributes = backlinks.get(target);
+            Set<String> sources = attributes == null ? null : attributes.get(attribute);
+            if (sources != null && sources.remove(node.getDn()) && sources.isEmpty()) {
+                attributes.remove(attribute);
+                if (attributes.isEmpty()) {
+                    backlinks.remove(target);
+                }
+            }
+        }));
+    }
+
+    /**
+     * Links the DN into its parent, and the parent into its own parent up to the first DN already linked.
+     */
+    private void addChild(String dn) {
+        for (String child = dn, parent = DnList.parent(dn); parent != null; child = parent, parent = DnList.parent(parent)) {
+            Set<String> siblings = children.get(parent);
+            if (siblings != null) {
+                siblings.add(child);
+                return;
+            }
+            children.computeIfAbsent(parent, p -> new LinkedHashSet<>()).add(child);
+        }
+    }
+
+    /**
+     * Unlinks the DN from its parent, and every container left without entries below it from its own parent.
+     */
+    private void removeChild(String dn) {
+        for (String child = dn, parent = DnList.parent(dn); parent != null; child = parent, parent = DnList.parent(parent)) {
+            Set<String> siblings = children.get(parent);
+            if (siblings == null || !siblings.remove(child) || !siblings.isEmpty()) {
+                return;
+            }
+            children.remove(parent);
+            if (nodes.containsKey(parent)) {
+                return;
+            }
+        }
+    }
+
+    private Set<String> below(String base) {
+        Set<String> below = new LinkedHashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.add(base);
+        while (!pending.isEmpty()) {
+            children.getOrDefault(pending.poll(), Collections.emptySet()).forEach(child -> {
+                below.add(child);
+                pending.add(child);
+            });
+        }
+        return below;
+    }
+
+    private <T> T read(Supplier<T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <T> List<T> copies(Collection<String> dns, Class<T> type) {
+        return dns.stream()
+                .map(nodes::get)
+                .map(node -> copy(node, type))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private static <T> T copy(Node node, Class<T> type) {
+        if (node == null || !type.isInstance(node.getEntry())) {
+            return null;
+        }
+        return type.cast(SerializationUtils.clone(node.getEntry()));
+    }
+
+    /**
+     * An entry with the DNs its link attributes point to, all normalized.
+     */
+    @Data
+    public static final class Node {
+        private final String dn;
+        private final Serializable entry;
+        private final Map<String, Set<String>> links;
+
+        public static Node of(String dn, Serializable entry, Map<String, ? extends Collection<String>> links) {
+            Map<String, Set<String>> normalized = new HashMap<>();
+            links.forEach((attribute, values) -> {
+                if (values != null && !values.isEmpty()) {
+                    normalized.put(attribute, Collections.unmodifiableSet(values.stream()
+                            .map(DnList::normalize)
+                            .collect(Collectors.toCollection(LinkedHashSet::new))));
+                }
+            });
+            return new Node(DnList.normalize(dn), entry, Collections.unmodifiableMap(normalized));
+        }
+    }
+}
@@ -0,0 +1,494 @@
+package no.fintlabs.portal.ldap;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import no.fintlabs.portal.model.access.AccessPackage;
+import no.fintlabs.portal.model.adapter.Adapter;
+import no.fintlabs.portal.model.asset.Asset;
+import no.fintlabs.portal.model.client.Client;
+import no.fintlabs.portal.model.component.Component;
+import no.fintlabs.portal.model.contact.Contact;
+import no.fintlabs.portal.model.organisation.Organisation;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.ldap.core.ContextMapper;
+import org.springframework.ldap.core.DirContextAdapter;
+import org.springframework.ldap.core.DirContextOperations;
+import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.core.support.LdapContextSource;
+import org.springframework.ldap.filter.GreaterThanOrEqualsFilter;
+import org.springframework.ldap.filter.OrFilter;
+import org.springframework.ldap.odm.core.ObjectDirectoryMapper;
+import org.springframework.ldap.support.LdapUtils;
+import org.springframework.stereotype.Service;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.HasControls;
+import javax.naming.ldap.LdapContext;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps a {@link DirectoryGraph} of the organisation, component and contact bases in memory.
+ * <p>
+ * The bases are read with paged searches at startup. The graph is then kept up to date from a persistent search per
+ * base when the directory supports it, otherwise by polling for entries with a newer {@code modifyTimestamp}.
+ * Changes are applied in batches every {@code batch-interval}. Polling does not see deletes and a persistent search
+ * misses changes made while it reconnects, so the bases are also read again every {@code reload-interval}.
+ * <p>
+ * Writes made through {@link LdapService} are applied to the graph straight away rather than waiting for the
+ * persistent search or the next poll, and until they are applied {@link #current(String...)} is empty for the bases
+ * they touch, so this instance always reads its own writes. Writes made by other instances show up within the batch
+ * interval, or the poll interval when polling. Until the first read completes {@link #current(String...)} is empty
+ * too, and callers should ask the directory.
+ * <p>
+ * Unless {@code fint.ldap.graph.enabled} is set, nothing is read or applied and {@link #current(String...)} is
+ * always empty, so callers use the same code path either way.
+ */
+@Slf4j
+@Service
+public class DirectoryGraphService implements ApplicationRunner, DisposableBean {
+
+    static final Map<String, Class<? extends BasicLdapEntry>> TYPES = new LinkedHashMap<>();
+    static final Map<Class<?>, List<String>> LINK_ATTRIBUTES = new HashMap<>();
+
+    static {
+        TYPES.put("fintorganisation", Organisation.class);
+        TYPES.put("fintasset", Asset.class);
+        TYPES.put("fintclient", Client.class);
+        TYPES.put("fintadapter", Adapter.class);
+        TYPES.put("fintcomponent", Component.class);
+        TYPES.put("fintcontact", Contact.class);
+        TYPES.put("fintaccess", AccessPackage.class);
+
+        LINK_ATTRIBUTES.put(Organisation.class, Arrays.asList("fintOrganisationComponents", "fintOrganisationLegal", "fintOrganisationTechnical", "fintOrganisationPrimaryAsset"));
+        LINK_ATTRIBUTES.put(Asset.class, Arrays.asList("fintAssetOrganisation", "fintAssetClients", "fintAssetAdapters"));
+        LINK_ATTRIBUTES.put(Client.class, Arrays.asList("fintClientAsset", "fintClientComponents", "fintClientAccessPackages"));
+        LINK_ATTRIBUTES.put(Adapter.class, Arrays.asList("fintAdapterComponents", "fintAdapterAssets"));
+        LINK_ATTRIBUTES.put(Component.class, Arrays.asList("fintComponentOrganisations", "fintComponentClients", "fintComponentAdapters"));
+        LINK_ATTRIBUTES.put(Contact.class, Arrays.asList("fintContactTechnical", "fintContactLegal"));
+        LINK_ATTRIBUTES.put(AccessPackage.class, Arrays.asList("fintAccessClients", "fintAccessComponents"));
+    }
+
+    private static final String MODIFY_TIMESTAMP = "modifyTimestamp";
+    private static final ContextMapper<DirContextOperations> ENTRY = ctx -> (DirContextOperations) ctx;
+
+    private final LdapTemplate ldapTemplate;
+    private final LdapContextSource contextSource;
+    private final List<String> bases;
+    private final boolean enabled;
+    private final boolean persistentSearch;
+    private final Duration pollInterval;
+    private final Duration reloadInterval;
+    private final Duration batchInterval;
+    private final int pageSize;
+
+    private final SearchControls searchControls;
+    private final String filter;
+    private final ScheduledExecutorService executor;
+    private final AtomicReference<DirectoryGraph> graph = new AtomicReference<>();
+    private final BlockingQueue<Change> changes = new LinkedBlockingQueue<>();
+    private final Set<LdapContext> listeners = ConcurrentHashMap.newKeySet();
+    private final Map<String, Integer> pendingBelow = new ConcurrentHashMap<>();
+    private final Map<String, Integer> pendingRemovals = new ConcurrentHashMap<>();
+    private final Object reloading = new Object();
+    private List<Change> replay;
+    private volatile String lastModified;
+    private volatile boolean running = true;
+
+    public DirectoryGraphService(
+            LdapTemplate ldapTemplate,
+            LdapContextSource contextSource,
+            @Value("${fint.ldap.organisation-base}") String organisationBase,
+            @Value("${fint.ldap.component-base}") String componentBase,
+            @Value("${fint.ldap.contact-base}") String contactBase,
+            @Value("${fint.ldap.graph.enabled:false}") boolean enabled,
+            @Value("${fint.ldap.graph.persistent-search:true}") boolean persistentSearch,
+            @Value("${fint.ldap.graph.poll-interval:30s}") Duration pollInterval,
+            @Value("${fint.ldap.graph.reload-interval:15m}") Duration reloadInterval,
+            @Value("${fint.ldap.graph.batch-interval:1s}") Duration batchInterval,
+            @Value("${fint.ldap.page-size:500}") int pageSize,
+            MeterRegistry meterRegistry
+    ) {
+        this.ldapTemplate = ldapTemplate;
+        this.contextSource = contextSource;
+        this.bases = Arrays.asList(organisationBase, componentBase, contactBase);
+        this.enabled = enabled;
+        this.persistentSearch = persistentSearch;
+        this.pollInterval = pollInterval;
+        this.reloadInterval = reloadInterval;
+        this.batchInterval = batchInterval;
+        this.pageSize = pageSize;
+
+        searchControls = new SearchControls();
+        searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        searchControls.setReturningAttributes(new String[]{"*", MODIFY_TIMESTAMP});
+
+        OrFilter types = new OrFilter();
+        TYPES.values().forEach(type -> types.or(ldapTemplate.getObjectDirectoryMapper().filterFor(type, null)));
+        filter = types.encode();
+
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newScheduledThreadPool(bases.size() + 2, runnable -> {
+            Thread thread = new Thread(runnable, "directory-graph-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (enabled) {
+            Gauge.builder("ldap.graph.entries", graph, g -> g.get() == null ? 0 : g.get().size())
+                    .description("Entries in the in-memory directory graph")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * The graph for reading below the given bases, or empty until the directory has been read and while writes made
+     * by this instance at or below a base, or removals at or above it, are waiting to be applied.
+     */
+    public Optional<DirectoryGraph> current(String... bases) {
+        DirectoryGraph current = graph.get();
+        if (current == null || Arrays.stream(bases).map(DnList::normalize).anyMatch(this::isPending)) {
+            return Optional.empty();
+        }
+        return Optional.of(current);
+    }
+
+    private boolean isPending(String base) {
+        if (pendingBelow.containsKey(base)) {
+            return true;
+        }
+        for (String dn = base; dn != null; dn = DnList.parent(dn)) {
+            if (pendingRemovals.containsKey(dn)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Applies an entry created or updated by this instance.
+     */
+    public void written(BasicLdapEntry entry) {
+        if (!enabled) {
+            return;
+        }
+        DirContextAdapter ctx = new DirContextAdapter(LdapUtils.newLdapName(entry.getDn()));
+        ldapTemplate.getObjectDirectoryMapper().mapToLdapDataEntry(entry, ctx);
+        DirectoryGraph.Node node = toNode(ctx);
+        if (node != null) {
+            queueWrite(new Change(null, node, true));
+        }
+    }
+
+    /**
+     * Applies the removal of an entry, and everything below it, by this instance.
+     */
+    public void removed(String dn) {
+        queueWrite(new Change(dn, null, true));
+    }
+
+    private void queueWrite(Change change) {
+        if (!enabled || !running) {
+            return;
+        }
+        pending(change, 1);
+        changes.add(change);
+        executor.execute(this::applyChanges);
+    }
+
+    /**
+     * Counts a write as pending on its DN and every DN above it, and a removal also on the removed DN itself.
+     */
+    private void pending(Change change, int delta) {
+        if (!change.isWrite()) {
+            return;
+        }
+        String dn = change.getRemoved() != null ? DnList.normalize(change.getRemoved()) : change.getNode().getDn();
+        if (change.getRemoved() != null) {
+            count(pendingRemovals, dn, delta);
+        }
+        for (String written = dn; written != null; written = DnList.parent(written)) {
+            count(pendingBelow, written, delta);
+        }
+    }
+
+    private static void count(Map<String, Integer> counts, String dn, int delta) {
+        counts.compute(dn, (key, count) -> {
+            int updated = (count == null ? 0 : count) + delta;
+            return updated > 0 ? updated : null;
+        });
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        if (persistentSearch && isPersistentSearchSupported()) {
+            bases.forEach(base -> executor.execute(() -> listen(base)));
+        } else {
+            log.info("Polling the directory for changes every {}", pollInterval);
+            executor.scheduleWithFixedDelay(this::poll, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        executor.execute(this::reload);
+        executor.scheduleWithFixedDelay(this::applyChanges, batchInterval.toMillis(), batchInterval.toMillis(), TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::reload, reloadInterval.toMillis(), reloadInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        listeners.forEach(LdapUtils::closeContext);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reads all bases from the master and replaces the graph. Changes are applied to the current graph while the
+     * read runs and are replayed onto the new one before it replaces it, so none are lost. When the read fails the
+     * current graph is kept.
+     */
+    void reload() {
+        synchronized (reloading) {
+            synchronized (this) {
+                replay = new ArrayList<>();
+            }
+            try {
+                long start = System.nanoTime();
+                List<DirectoryGraph.Node> nodes = new ArrayList<>();
+                bases.forEach(base -> {
+                    try (PagedSearch<DirContextOperations> search = new PagedSearch<>(
+                            contextSource,
+                            pageSize,
+                            LdapUtils.newLdapName(base),
+                            filter,
+                            searchControls,
+                            ENTRY)) {
+                        while (search.hasMore()) {
+                            search.nextPage().forEach(entry -> {
+                                Optional.ofNullable(toNode(entry)).ifPresent(nodes::add);
+                                updateLastModified(entry);
+                            });
+                        }
+                    }
+                });
+                DirectoryGraph loaded = DirectoryGraph.of(nodes);
+                synchronized (this) {
+                    apply(loaded, replay);
+                    graph.set(loaded);
+                }
+                log.info("Directory graph loaded with {} entries in {} ms", nodes.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } catch (RuntimeException e) {
+                log.warn("Unable to load the directory graph: {}", e.getMessage());
+            } finally {
+                synchronized (this) {
+                    replay = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the queued changes to the graph. Before the first read completes, writes made by this instance are
+     * dropped, since the read includes them, unless a read is running and may have passed them already.
+     */
+    synchronized void applyChanges() {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        DirectoryGraph current = graph.get();
+        List<Change> batch = new ArrayList<>();
+        if (current == null && replay == null) {
+            changes.removeIf(change -> change.isWrite() && batch.add(change));
+        } else {
+            changes.drainTo(batch);
+            if (current != null) {
+                apply(current, batch);
+            }
+            if (replay != null) {
+                replay.addAll(batch);
+            }
+        }
+        batch.forEach(change -> pending(change, -1));
+        log.debug("Applied {} directory changes", batch.size());
+    }
+
+    /**
+     * Applies the changes in one step. Later changes to an entry win over earlier ones.
+     */
+    private static void apply(DirectoryGraph graph, List<Change> batch) {
+        Map<String, DirectoryGraph.Node> updated = new LinkedHashMap<>();
+        Set<String> removed = new HashSet<>();
+        batch.forEach(change -> {
+            if (change.getRemoved() != null) {
+                String dn = DnList.normalize(change.getRemoved());
+                updated.keySet().removeIf(key -> key.equals(dn) || key.endsWith("," + dn));
+                removed.add(dn);
+            }
+            if (change.getNode() != null) {
+                updated.put(change.getNode().getDn(), change.getNode());
+            }
+        });
+        graph.apply(updated.values(), removed);
+    }
+
+    private void listen(String base) {
+        while (running) {
+            LdapContext ctx = null;
+            try {
+                ctx = (LdapContext) contextSource.getReadOnlyContext();
+                listeners.add(ctx);
+                ctx.setRequestControls(new Control[]{PersistentSearch.requestControl()});
+                NamingEnumeration<SearchResult> results = ctx.search(LdapUtils.newLdapName(base), filter, searchControls);
+                log.info("Listening for changes below {}", base);
+                while (running && results.hasMore()) {
+                    changes.add(toChange(results.next()));
+                }
+            } catch (NamingException | org.springframework.ldap.NamingException e) {
+                if (running) {
+                    log.warn("Persistent search below {} failed, reconnecting in {}: {}", base, pollInterval, e.getMessage());
+                }
+            } finally {
+                if (ctx != null) {
+                    listeners.remove(ctx);
+                    LdapUtils.closeContext(ctx);
+                }
+            }
+
+            if (running) {
+                sleep(pollInterval);
+                executor.execute(this::reload);
+            }
+        }
+    }
+
+    private Change toChange(SearchResult result) {
+        DirContextAdapter entry = new DirContextAdapter(result.getAttributes(), LdapUtils.newLdapName(result.getNameInNamespace()));
+        PersistentSearch.EntryChange entryChange = result instanceof HasControls
+                ? PersistentSearch.entryChange(((HasControls) result).getControls())
+                : null;
+        if (entryChange == null) {
+            return new Change(null, toNode(entry), false);
+        }
+        switch (entryChange.getChangeType()) {
+            case PersistentSearch.DELETE:
+                return new Change(entry.getNameInNamespace(), null, false);
+            case PersistentSearch.MOD_DN:
+                return new Change(entryChange.getPreviousDn(), toNode(entry), false);
+            default:
+                return new Change(null, toNode(entry), false);
+        }
+    }
+
+    private void poll() {
+        String since = lastModified;
+        if (since == null || graph.get() == null) {
+            return;
+        }
+        try {
+            String changed = "(&" + filter + new GreaterThanOrEqualsFilter(MODIFY_TIMESTAMP, since).encode() + ")";
+            bases.forEach(base -> ldapTemplate.search(base, changed, searchControls, ENTRY)
+                    .forEach(entry -> {
+                        changes.add(new Change(null, toNode(entry), false));
+                        updateLastModified(entry);
+                    }));
+        } catch (RuntimeException e) {
+            log.warn("Unable to poll the directory for changes: {}", e.getMessage());
+        }
+    }
+
+    DirectoryGraph.Node toNode(DirContextOperations entry) {
+        Class<? extends BasicLdapEntry> type = typeOf(entry);
+        if (type == null) {
+            return null;
+        }
+
+        ObjectDirectoryMapper odm = ldapTemplate.getObjectDirectoryMapper();
+        Map<String, List<String>> links = new HashMap<>();
+        LINK_ATTRIBUTES.getOrDefault(type, Collections.emptyList()).forEach(attribute -> {
+            String[] values = entry.getStringAttributes(attribute);
+            if (values != null) {
+                links.put(attribute, Arrays.asList(values));
+            }
+        });
+        return DirectoryGraph.Node.of(entry.getNameInNamespace(), odm.mapFromLdapDataEntry(entry, type), links);
+    }
+
+    private static Class<? extends BasicLdapEntry> typeOf(DirContextOperations entry) {
+        String[] objectClasses = entry.getStringAttributes("objectClass");
+        if (objectClasses == null) {
+            return null;
+        }
+        for (String objectClass : objectClasses) {
+            Class<? extends BasicLdapEntry> type = TYPES.get(objectClass.toLowerCase(Locale.ROOT));
+            if (type != null) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    private void updateLastModified(DirContextOperations entry) {
+        String modified = entry.getStringAttribute(MODIFY_TIMESTAMP);
+        if (modified != null && (lastModified == null || modified.compareTo(lastModified) > 0)) {
+            lastModified = modified;
+        }
+    }
+
+    private boolean isPersistentSearchSupported() {
+        try {
+            boolean supported = ldapTemplate.executeReadOnly(ctx -> {
+                Attribute controls = ctx.getAttributes("", new String[]{"supportedControl"}).get("supportedControl");
+                return controls != null && controls.contains(PersistentSearch.REQUEST_CONTROL);
+            });
+            log.info("Persistent search is {}supported by the directory", supported ? "" : "not ");
+            return supported;
+        } catch (org.springframework.ldap.NamingException e) {
+            log.warn("Unable to read the controls supported by the directory: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Data
+    private static final class Change {
+        private final String removed;
+        private final DirectoryGraph.Node node;
+        private final boolean write;
+    }
+}
@@ -0,0 +1,173 @@
+package no.fintlabs.portal.ldap;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * List of distinguished names, or other link values, without duplicates.
+ * <p>
+ * Values are indexed by their normalized form, so {@code contains}, {@code add} and {@code remove} are constant time
+ * and ignore case and spacing between RDNs. Values that are not DNs are compared ignoring case. Insertion order is
+ * kept and the value as first added is the one stored, so the list maps like any other multi-valued attribute.
+ * Positional access walks the list.
+ */
+public class DnList extends AbstractList<String> implements Serializable {
+
+    private final LinkedHashMap<String, String> values = new LinkedHashMap<>();
+
+    public DnList() {
+    }
+
+    public DnList(Collection<String> initialValues) {
+        initialValues.forEach(this::add);
+    }
+
+    /**
+     * Returns the list itself if it already is a {@code DnList}, otherwise a {@code DnList} with its values.
+     */
+    public static DnList of(List<String> values) {
+        if (values instanceof DnList) {
+            return (DnList) values;
+        }
+        return values == null ? new DnList() : new DnList(values);
+    }
+
+    public static String normalize(String value) {
+        LdapName name;
+        try {
+            name = new LdapName(value);
+        } catch (InvalidNameException e) {
+            return value.toLowerCase(Locale.ROOT);
+        }
+        if (name.isEmpty()) {
+            return value.toLowerCase(Locale.ROOT);
+        }
+
+        StringBuilder normalized = new StringBuilder();
+        for (int i = name.size() - 1; i >= 0; i--) {
+            if (normalized.length() > 0) {
+                normalized.append(',');
+            }
+            normalized.append(name.getRdn(i).toString().toLowerCase(Locale.ROOT));
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * The parent of a normalized DN, the empty DN for a single RDN and {@code null} for the empty DN.
+     */
+    public static String parent(String normalized) {
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == ',') {
+                return normalized.substring(i + 1);
+            }
+        }
+        return "";
+    }
+
+    /**
+     * The stored value matching the given value, or {@code null}.
+     */
+    public String find(String value) {
+        return value == null ? null : values.get(normalize(value));
+    }
+
+    /**
+     * Appends the value unless an equal value is already present.
+     *
+     * @return {@code true} if the value was added
+     */
+    @Override
+    public boolean add(String value) {
+        Objects.requireNonNull(value);
+        return values.putIfAbsent(normalize(value), value) == null;
+    }
+
+    @Override
+    public void add(int index, String value) {
+        if (index != size()) {
+            throw new UnsupportedOperationException("Values can only be appended");
+        }
+        add(value);
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return value instanceof String && find((String) value) != null;
+    }
+
+    @Override
+    public boolean remove(Object value) {
+        return value instanceof String && values.remove(normalize((String) value)) != null;
+    }
+
+    @Override
+    public String remove(int index) {
+        String value = get(index);
+        remove(value);
+        return value;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Iterator<String> iterator = iterator();
+        for (int i = 0; i < index; i++) {
+            iterator.next();
+        }
+        return iterator.next();
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return values.values().iterator();
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public void clear() {
+        values.clear();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof List) || ((List<?>) o).size() != size()) {
+            return false;
+        }
+        Iterator<?> other = ((List<?>) o).iterator();
+        for (String value : this) {
+            if (!Objects.equals(value, other.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+}
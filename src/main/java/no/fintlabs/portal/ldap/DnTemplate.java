@@ -0,0 +1,83 @@
+package no.fintlabs.portal.ldap;
+
+import org.springframework.ldap.support.LdapUtils;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+
+/**
+ * A base DN parsed once, from which child DNs are built by appending RDNs.
+ * <p>
+ * The string form of the base is kept, so {@link #dn(String, String)} and {@link #child(String, String)} build
+ * the string form of a child without creating an {@code LdapName}. The base is only parsed into a name when one is
+ * asked for. Strings are formatted the way {@code LdapName.toString()} formats a name built with
+ * {@code LdapNameBuilder}. Instances are immutable; {@link #toName()} and {@link #name(String, String)} return new
+ * names.
+ */
+public final class DnTemplate {
+
+    private final String dn;
+    private volatile LdapName base;
+
+    private DnTemplate(String dn, LdapName base) {
+        this.dn = dn;
+        this.base = base;
+    }
+
+    public static DnTemplate of(String base) {
+        LdapName name = LdapUtils.newLdapName(base);
+        return new DnTemplate(format(name), name);
+    }
+
+    /**
+     * The template for the child of this base with the given RDN.
+     */
+    public DnTemplate child(String type, String value) {
+        return new DnTemplate(dn(type, value), null);
+    }
+
+    public LdapName toName() {
+        LdapName name = base;
+        if (name == null) {
+            name = LdapUtils.newLdapName(dn);
+            base = name;
+        }
+        return (LdapName) name.clone();
+    }
+
+    public LdapName name(String type, String value) {
+        LdapName name = toName();
+        name.add(rdn(type, value));
+        return name;
+    }
+
+    public String dn(String type, String value) {
+        String rdn = type + "=" + Rdn.escapeValue(value);
+        return dn.isEmpty() ? rdn : rdn + "," + dn;
+    }
+
+    @Override
+    public String toString() {
+        return dn;
+    }
+
+    private static String format(LdapName name) {
+        StringBuilder dn = new StringBuilder();
+        for (int i = name.size() - 1; i >= 0; i--) {
+            if (dn.length() > 0) {
+                dn.append(',');
+            }
+            dn.append(name.getRdn(i));
+        }
+        return dn.toString();
+    }
+
+    private static Rdn rdn(String type, String value) {
+        try {
+            return new Rdn(type, value);
+        } catch (InvalidNameException e) {
+            throw LdapUtils.convertLdapException(e);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package no.fintlabs.portal.ldap;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.SerializationUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Read-through cache for directory entries and search results.
+ * <p>
+ * Entries are cached per normalized DN and entity class, search results per base, entity class and filter.
+ * Cached objects are never handed out directly, callers always get their own copy since the services mutate
+ * the entries they read before writing them back. Results loaded while a write was invalidating the cache are
+ * not stored.
+ * <p>
+ * With read replicas, a read that follows a write made on another thread may still see the replica's old copy.
+ * Writes are therefore remembered per DN for the read-your-writes window, and a result read from a replica is not
+ * stored when a write within the window touched it: an entry that was written, or that lies in a subtree that was
+ * deleted, or a search whose base is at or above a written entry. Results read from the master are always stored.
+ * Remembering writes per DN keeps the cache working under write traffic to other parts of the directory. Writes
+ * are kept by DN, and by every DN at or above them, in caches that expire after the window, so checking a result
+ * only looks up the DN and its ancestors.
+ */
+@Slf4j
+@Component
+public class LdapEntryCache {
+
+    private final Cache<String, Map<Class<?>, Serializable>> entries;
+    private final Cache<SearchKey, List<Serializable>> searches;
+    private final AtomicLong generation = new AtomicLong();
+    private ReadYourWrites readYourWrites;
+    private Cache<String, Boolean> recentWrites;
+    private Cache<String, Boolean> recentWritesBelow;
+
+    public LdapEntryCache(
+            @Value("${fint.ldap.cache.entries.maximum-size:5000}") long entriesMaximumSize,
+            @Value("${fint.ldap.cache.searches.maximum-weight:20000}") long searchesMaximumWeight,
+            @Value("${fint.ldap.cache.time-to-live:5m}") Duration timeToLive,
+            MeterRegistry meterRegistry
+    ) {
+        entries = CacheBuilder.newBuilder()
+                .maximumSize(entriesMaximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+        searches = CacheBuilder.newBuilder()
+                .maximumWeight(searchesMaximumWeight)
+                .<SearchKey, List<Serializable>>weigher((key, value) -> Math.max(1, value.size()))
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+
+        GuavaCacheMetrics.monitor(meterRegistry, entries, "ldap.entries");
+        GuavaCacheMetrics.monitor(meterRegistry, searches, "ldap.searches");
+
+        log.info("LDAP cache: {} entries, {} search result entries, time to live {}", entriesMaximumSize, searchesMaximumWeight, timeToLive);
+    }
+
+    @Autowired(required = false)
+    public void setReadYourWrites(ReadYourWrites readYourWrites) {
+        this.readYourWrites = readYourWrites;
+        recentWrites = CacheBuilder.newBuilder().expireAfterWrite(readYourWrites.getWindow()).build();
+        recentWritesBelow = CacheBuilder.newBuilder().expireAfterWrite(readYourWrites.getWindow()).build();
+    }
+
+    public <T> T getEntry(String dn, Class<T> type, Supplier<T> loader) {
+        if (dn == null || !Serializable.class.isAssignableFrom(type)) {
+            return loader.get();
+        }
+
+        String key = normalize(dn);
+        Map<Class<?>, Serializable> cached = entries.getIfPresent(key);
+        if (cached != null && cached.containsKey(type)) {
+            return type.cast(SerializationUtils.clone(cached.get(type)));
+        }
+
+        long loadedAt = generation.get();
+        T entry = loader.get();
+        if (entry != null && isStorable(loadedAt) && !isEntryWritten(key)) {
+            entries.asMap()
+                    .computeIfAbsent(key, k -> new ConcurrentHashMap<>())
+                    .put(type, SerializationUtils.clone((Serializable) entry));
+        }
+        return entry;
+    }
+
+    public <T> List<T> search(String base, Class<T> type, String filter, Supplier<List<T>> loader) {
+        if (base == null || !Serializable.class.isAssignableFrom(type)) {
+            return loader.get();
+        }
+
+        SearchKey key = new SearchKey(normalize(base), type, filter);
+        List<Serializable> cached = searches.getIfPresent(key);
+        if (cached != null) {
+            return cached.stream()
+                    .map(SerializationUtils::clone)
+                    .map(type::cast)
+                    .collect(Collectors.toList());
+        }
+
+        long loadedAt = generation.get();
+        List<T> result = loader.get();
+        if (result != null && isStorable(loadedAt) && !isSearchWritten(key.getBase())) {
+            searches.put(key, result.stream()
+                    .map(Serializable.class::cast)
+                    .map(SerializationUtils::clone)
+                    .collect(Collectors.toCollection(ArrayList::new)));
+        }
+        return result;
+    }
+
+    /**
+     * Drops the entry and every cached search result with a base at or above the entry.
+     */
+    public void invalidate(String dn) {
+        if (dn == null) {
+            return;
+        }
+        String key = normalize(dn);
+        generation.incrementAndGet();
+        written(key, false);
+        entries.invalidate(key);
+        searches.asMap().keySet().removeIf(searchKey -> isAtOrBelow(key, searchKey.getBase()));
+    }
+
+    /**
+     * Like {@link #invalidate(String)}, but also drops cached entries below the DN.
+     */
+    public void invalidateSubtree(String dn) {
+        if (dn == null) {
+            return;
+        }
+        String key = normalize(dn);
+        generation.incrementAndGet();
+        written(key, true);
+        entries.asMap().keySet().removeIf(entryKey -> isAtOrBelow(entryKey, key));
+        searches.asMap().keySet().removeIf(searchKey ->
+                isAtOrBelow(key, searchKey.getBase()) || isAtOrBelow(searchKey.getBase(), key));
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        written("", true);
+        entries.invalidateAll();
+        searches.invalidateAll();
+    }
+
+    /**
+     * Remembers the write for the window. The flag tells whether the subtree below the DN was written too.
+     */
+    private void written(String dn, boolean subtree) {
+        if (isReplicated()) {
+            recentWrites.asMap().merge(dn, subtree, Boolean::logicalOr);
+            for (String written = dn; written != null; written = DnList.parent(written)) {
+                recentWritesBelow.put(written, true);
+            }
+        }
+    }
+
+    private boolean isStorable(long loadedAt) {
+        return loadedAt == generation.get();
+    }
+
+    private boolean isEntryWritten(String dn) {
+        if (!isReplicated() || readYourWrites.isWithinWindow()) {
+            return false;
+        }
+        return recentWrites.getIfPresent(dn) != null || isSubtreeWritten(DnList.parent(dn));
+    }
+
+    private boolean isSearchWritten(String base) {
+        if (!isReplicated() || readYourWrites.isWithinWindow()) {
+            return false;
+        }
+        return recentWritesBelow.getIfPresent(base) != null || isSubtreeWritten(DnList.parent(base));
+    }
+
+    /**
+     * Whether a subtree write within the window covers the DN, walking up from the DN to the root.
+     */
+    private boolean isSubtreeWritten(String dn) {
+        for (String ancestor = dn; ancestor != null; ancestor = DnList.parent(ancestor)) {
+            if (Boolean.TRUE.equals(recentWrites.getIfPresent(ancestor))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isReplicated() {
+        return readYourWrites != null && readYourWrites.isEnabled();
+    }
+
+    static String normalize(String dn) {
+        return DnList.normalize(dn);
+    }
+
+    private static boolean isAtOrBelow(String dn, String base) {
+        return base.isEmpty() || dn.equals(base) || dn.endsWith("," + base);
+    }
+
+    @Data
+    private static class SearchKey {
+        private final String base;
+        private final Class<?> type;
+        private final String filter;
+    }
+}
@@ -0,0 +1,70 @@
+package no.fintlabs.portal.ldap;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ldap.NameAlreadyBoundException;
+import org.springframework.ldap.NameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Times directory calls as {@code ldap.operations}, tagged by operation, entry type and outcome, and counts the
+ * entries returned by searches as {@code ldap.search.results}.
+ */
+@Component
+public class LdapMetrics {
+
+    public static final String LOOKUP = "lookup";
+    public static final String SEARCH = "search";
+    public static final String CREATE = "create";
+    public static final String MODIFY = "modify";
+    public static final String DELETE = "delete";
+
+    private final MeterRegistry meterRegistry;
+
+    public LdapMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> T record(String operation, Class<?> type, Supplier<T> call) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result = call.get();
+            outcome = "success";
+            return result;
+        } catch (NameNotFoundException e) {
+            outcome = "not_found";
+            throw e;
+        } catch (NameAlreadyBoundException e) {
+            outcome = "already_exists";
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("ldap.operations")
+                    .tag("operation", operation)
+                    .tag("type", typeName(type))
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    public void record(String operation, Class<?> type, Runnable call) {
+        record(operation, type, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    public void recordResults(Class<?> type, int size) {
+        DistributionSummary.builder("ldap.search.results")
+                .tag("type", typeName(type))
+                .register(meterRegistry)
+                .record(size);
+    }
+
+    private static String typeName(Class<?> type) {
+        return type == null ? "none" : type.getSimpleName();
+    }
+}
@@ -1,50 +1,192 @@
 package no.fintlabs.portal.ldap;
 
+import com.google.common.base.Suppliers;
+import lombok.extern.slf4j.Slf4j;
+import no.fintlabs.portal.exceptions.UpdateEntityException;
 import no.fintlabs.portal.utilities.LdapUniqueNameUtility;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.ldap.AttributeInUseException;
+import org.springframework.ldap.NameAlreadyBoundException;
+import org.springframework.ldap.NameNotFoundException;
+import org.springframework.ldap.NoSuchAttributeException;
+import org.springframework.ldap.core.ContextMapper;
+import org.springframework.ldap.core.DirContextOperations;
 import org.springframework.ldap.core.LdapTemplate;
 import org.springframework.ldap.filter.EqualsFilter;
+import org.springframework.ldap.filter.Filter;
 import org.springframework.ldap.support.LdapNameBuilder;
+import org.springframework.ldap.support.LdapUtils;
+import org.springframework.ldap.odm.core.ObjectDirectoryMapper;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import javax.naming.Name;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.ModificationItem;
 import javax.naming.directory.SearchControls;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 public class LdapService {
 
+    private static final String NO_ATTRIBUTES = "1.1";
+    private static final String SUBTREE_DELETE_CONTROL = "1.2.840.113556.1.4.805";
+
     private final SearchControls searchControls;
+    private final SearchControls existsControls;
+    private final SearchControls subtreeNamesControls;
+    private final Supplier<Boolean> subtreeDeleteSupported = Suppliers.memoize(this::isSubtreeDeleteSupported);
 
     @Autowired
     private LdapTemplate ldapTemplate;
 
+    @Autowired
+    private LdapEntryCache entryCache;
+
+    @Autowired
+    private LdapMetrics metrics;
+
+    @Autowired
+    private DirectoryGraphService directoryGraph;
+
+    @Autowired(required = false)
+    private ReadYourWrites readYourWrites;
+
+    @Value("${fint.ldap.write-mode:DIRECT}")
+    private LdapWriteMode writeMode = LdapWriteMode.DIRECT;
+
+    @Value("${fint.ldap.page-size:500}")
+    private int pageSize = 500;
+
+    @Value("${fint.ldap.delete.subtree-control:true}")
+    private boolean subtreeDeleteControl = true;
+
+    @Value("${fint.ldap.delete.parallelism:4}")
+    private int deleteParallelism = 4;
+
     public LdapService() {
         searchControls = new SearchControls();
         searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+
+        existsControls = new SearchControls();
+        existsControls.setSearchScope(SearchControls.OBJECT_SCOPE);
+        existsControls.setReturningAttributes(new String[]{NO_ATTRIBUTES});
+        existsControls.setCountLimit(1);
+
+        subtreeNamesControls = new SearchControls();
+        subtreeNamesControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        subtreeNamesControls.setReturningAttributes(new String[]{NO_ATTRIBUTES});
     }
 
     public boolean createEntry(BasicLdapEntry basicLdapEntry) {
-        if (!entryExists(basicLdapEntry.getDn())) {
-            ldapTemplate.create(basicLdapEntry);
-            return true;
+        readFromMaster();
+        if (writeMode == LdapWriteMode.CHECK_EXISTS && entryExists(basicLdapEntry.getDn())) {
+            return false;
         }
-        return false;
+        try {
+            metrics.record(LdapMetrics.CREATE, basicLdapEntry.getClass(), () -> ldapTemplate.create(basicLdapEntry));
+        } catch (NameAlreadyBoundException e) {
+            log.debug("Entry {} already exists", basicLdapEntry.getDn());
+            return false;
+        }
+        clearMembershipChanges(basicLdapEntry);
+        entryCache.invalidate(basicLdapEntry.getDn());
+        directoryGraph.written(basicLdapEntry);
+        return true;
     }
 
+    /**
+     * The ODM computes the modifications from the entry as read from the directory, so the entry is read from the
+     * master like the existence check. A replica that lags behind would otherwise hide changes made on the master.
+     */
     public boolean updateEntry(BasicLdapEntry basicLdapEntry) {
-        if (entryExists(basicLdapEntry.getDn())) {
-            ldapTemplate.update(basicLdapEntry);
+        readFromMaster();
+        if (writeMode == LdapWriteMode.CHECK_EXISTS && !entryExists(basicLdapEntry.getDn())) {
+            return false;
+        }
+        try {
+            metrics.record(LdapMetrics.MODIFY, basicLdapEntry.getClass(), () -> ldapTemplate.update(basicLdapEntry));
+        } catch (NameNotFoundException e) {
+            log.debug("Entry {} not found", basicLdapEntry.getDn());
+            return false;
+        }
+        clearMembershipChanges(basicLdapEntry);
+        entryCache.invalidate(basicLdapEntry.getDn());
+        directoryGraph.written(basicLdapEntry);
+        return true;
+    }
+
+    /**
+     * Writes only the values added to or removed from the entry's link attributes since it was read or last written.
+     */
+    public boolean updateMemberships(MembershipTrackingEntry entry) {
+        MembershipChanges changes = entry.getMembershipChanges();
+        if (changes.isEmpty()) {
             return true;
         }
-        return false;
+
+        Name dn = LdapNameBuilder.newInstance(entry.getDn()).build();
+        try {
+            metrics.record(LdapMetrics.MODIFY, entry.getClass(), () -> ldapTemplate.modifyAttributes(dn, changes.getModificationItems()));
+        } catch (NameNotFoundException e) {
+            log.debug("Entry {} not found", entry.getDn());
+            return false;
+        } catch (AttributeInUseException | NoSuchAttributeException e) {
+            log.debug("Membership of {} has changed in the directory, applying changes one by one", entry.getDn());
+            changes.getSingleValueModificationItems().forEach(item -> modifyIgnoringExistingValues(dn, entry.getClass(), item));
+        }
+        changes.clear();
+        entryCache.invalidate(entry.getDn());
+        directoryGraph.written(entry);
+        return true;
+    }
+
+    private void modifyIgnoringExistingValues(Name dn, Class<?> type, ModificationItem item) {
+        try {
+            metrics.record(LdapMetrics.MODIFY, type, () -> ldapTemplate.modifyAttributes(dn, new ModificationItem[]{item}));
+        } catch (AttributeInUseException | NoSuchAttributeException e) {
+            log.debug("{} on {} is already applied", item, dn);
+        }
+    }
+
+    private void clearMembershipChanges(BasicLdapEntry basicLdapEntry) {
+        if (basicLdapEntry instanceof MembershipTrackingEntry) {
+            ((MembershipTrackingEntry) basicLdapEntry).getMembershipChanges().clear();
+        }
+    }
+
+    /**
+     * Sends the reads of this thread to the master for the read-your-writes window, for reads that a write depends on.
+     */
+    private void readFromMaster() {
+        if (readYourWrites != null) {
+            readYourWrites.written();
+        }
     }
 
     public <T> T getEntryByUniqueName(String name, String base, Class<T> type) {
         if (name != null && base != null) {
-            List<T> ldapEntries = ldapTemplate.find(
+            EqualsFilter filter = new EqualsFilter(LdapUniqueNameUtility.getUniqueNameAttribute(type), name);
+            List<T> ldapEntries = entryCache.search(base, type, filter.encode(), () -> metrics.record(LdapMetrics.SEARCH, type, () -> ldapTemplate.find(
                     LdapNameBuilder.newInstance(base).build(),
-                    new EqualsFilter(LdapUniqueNameUtility.getUniqueNameAttribute(type), name),
-                    searchControls, type);
+                    filter,
+                    searchControls, type)));
 
             if (ldapEntries != null && ldapEntries.size() == 1) {
                 return ldapEntries.get(0);
@@ -65,30 +207,200 @@ public class LdapService {
 
     public boolean entryExists(String dn) {
         try {
-            ldapTemplate.lookup(LdapNameBuilder.newInstance(dn).build());
-            return true;
+            List<Boolean> found = metrics.record(LdapMetrics.LOOKUP, null, () -> ldapTemplate.search(
+                    LdapNameBuilder.newInstance(dn).build(),
+                    "(objectClass=*)",
+                    existsControls,
+                    (ContextMapper<Boolean>) ctx -> true
+            ));
+            return found != null && !found.isEmpty();
         } catch (org.springframework.ldap.NamingException e) {
             return false;
         }
     }
 
     public <T> List<T> getAll(String base, Class<T> type) {
-        if (entryExists(base)) {
-            return ldapTemplate.findAll(LdapNameBuilder.newInstance(base).build(), searchControls, type);
-        }
-        return null;
+        return entryCache.search(base, type, null, () -> {
+            try {
+                return withResultCount(type, metrics.record(LdapMetrics.SEARCH, type,
+                        () -> ldapTemplate.findAll(LdapNameBuilder.newInstance(base).build(), searchControls, type)));
+            } catch (NameNotFoundException e) {
+                return null;
+            }
+        });
+    }
+
+    public <T> List<T> getAll(String base, Class<T> type, Filter filter) {
+        return entryCache.search(base, type, filter.encode(), () -> {
+            try {
+                return withResultCount(type, metrics.record(LdapMetrics.SEARCH, type,
+                        () -> ldapTemplate.find(LdapNameBuilder.newInstance(base).build(), filter, searchControls, type)));
+            } catch (NameNotFoundException e) {
+                return null;
+            }
+        });
+    }
+
+    private <T> List<T> withResultCount(Class<T> type, List<T> results) {
+        metrics.recordResults(type, results == null ? 0 : results.size());
+        return results;
+    }
+
+    /**
+     * Streams all entries of the given type below the base, reading them from the directory one page at a time.
+     * The results are not cached, use this when the entries are only iterated over.
+     */
+    public <T> Flux<T> getAllPaged(String base, Class<T> type) {
+        ObjectDirectoryMapper odm = ldapTemplate.getObjectDirectoryMapper();
+        String filter = odm.filterFor(type, null).encode();
+        ContextMapper<T> mapper = ctx -> odm.mapFromLdapDataEntry((DirContextOperations) ctx, type);
+
+        return Flux.<List<T>, PagedSearch<T>>generate(
+                () -> new PagedSearch<>(
+                        ldapTemplate.getContextSource(),
+                        pageSize,
+                        LdapNameBuilder.newInstance(base).build(),
+                        filter,
+                        searchControls,
+                        mapper
+                ),
+                (search, sink) -> {
+                    if (!search.hasMore()) {
+                        sink.complete();
+                        return search;
+                    }
+                    try {
+                        sink.next(withResultCount(type, metrics.record(LdapMetrics.SEARCH, type, search::nextPage)));
+                    } catch (NameNotFoundException e) {
+                        sink.complete();
+                    }
+                    return search;
+                },
+                PagedSearch::close
+        ).flatMapIterable(Function.identity());
     }
 
     public <T> T getEntry(String dn, Class<T> type) {
+        return entryCache.getEntry(dn, type, () -> {
+            try {
+                return metrics.record(LdapMetrics.LOOKUP, type, () -> ldapTemplate.findByDn(LdapNameBuilder.newInstance(dn).build(), type));
+            } catch (org.springframework.ldap.NamingException e) {
+                return null;
+            }
+        });
+    }
+
+    public void deleteEntry(BasicLdapEntry basicLdapEntry) {
         try {
-            return ldapTemplate.findByDn(LdapNameBuilder.newInstance(dn).build(), type);
-        } catch (org.springframework.ldap.NamingException e) {
+            metrics.record(LdapMetrics.DELETE, basicLdapEntry.getClass(), () -> ldapTemplate.delete(basicLdapEntry));
+        } finally {
+            entryCache.invalidateSubtree(basicLdapEntry.getDn());
+            directoryGraph.removed(basicLdapEntry.getDn());
+        }
+    }
+
+    /**
+     * Deletes the entry and everything below it. The directory removes the subtree in one operation when it supports
+     * the subtree delete control, otherwise the entries are deleted leaf-first, one level at a time, with at most
+     * {@code delete.parallelism} deletes in flight. A failed delete does not stop the other deletes on its level, but
+     * the deletion stops once the level is done, since the entries above it cannot be deleted.
+     *
+     * @throws UpdateEntityException if an entry could not be deleted, with the number of entries deleted and remaining
+     */
+    public void deleteSubtree(String dn) {
+        Name name = LdapUtils.newLdapName(dn);
+        try {
+            if (subtreeDeleteControl && subtreeDeleteSupported.get()) {
+                try {
+                    metrics.record(LdapMetrics.DELETE, null, () -> deleteWithSubtreeControl(name));
+                } catch (org.springframework.ldap.NamingException e) {
+                    throw new UpdateEntityException(String.format("Unable to delete %s: %s", dn, e.getMessage()));
+                }
+                log.info("Deleted {} with the subtree delete control", dn);
+            } else {
+                deleteLeafFirst(name);
+            }
+        } finally {
+            entryCache.invalidateSubtree(dn);
+            directoryGraph.removed(dn);
+        }
+    }
+
+    private void deleteWithSubtreeControl(Name name) {
+        ldapTemplate.executeReadWrite(ctx -> {
+            LdapContext ldapContext = (LdapContext) ctx;
+            ldapContext.setRequestControls(new Control[]{new BasicControl(SUBTREE_DELETE_CONTROL, true, null)});
+            try {
+                ldapContext.unbind(name);
+            } finally {
+                ldapContext.setRequestControls(null);
+            }
             return null;
+        });
+    }
+
+    private void deleteLeafFirst(Name base) {
+        List<Name> names = findSubtreeNames(base);
+        Map<Integer, List<Name>> levels = names.stream()
+                .collect(Collectors.groupingBy(Name::size, () -> new TreeMap<>(Comparator.reverseOrder()), Collectors.toList()));
+        AtomicInteger deleted = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        for (List<Name> level : levels.values()) {
+            Flux.fromIterable(level)
+                    .flatMap(name -> Mono.fromRunnable(() -> metrics.record(LdapMetrics.DELETE, null, () -> ldapTemplate.unbind(name)))
+                                    .onErrorResume(NameNotFoundException.class, e -> Mono.empty())
+                                    .doOnSuccess(nothing -> deleted.incrementAndGet())
+                                    .onErrorResume(e -> {
+                                        log.warn("Unable to delete {}: {}", name, e.getMessage());
+                                        failed.incrementAndGet();
+                                        firstFailure.compareAndSet(null, e);
+                                        return Mono.empty();
+                                    })
+                                    .subscribeOn(Schedulers.boundedElastic()),
+                            deleteParallelism)
+                    .blockLast();
+            log.info("Deleted {} of {} entries below {}", deleted.get(), names.size(), base);
+
+            if (failed.get() > 0) {
+                throw new UpdateEntityException(String.format("Unable to delete %d entries below %s, %d of %d deleted and %d remaining: %s",
+                        failed.get(), base, deleted.get(), names.size(), names.size() - deleted.get(), firstFailure.get().getMessage()));
+            }
         }
     }
 
-    public void deleteEntry(BasicLdapEntry basicLdapEntry) {
-        ldapTemplate.delete(basicLdapEntry);
+    /**
+     * Lists the subtree on the master, as entries created just before the delete may not have reached the replicas.
+     */
+    List<Name> findSubtreeNames(Name base) {
+        readFromMaster();
+        List<Name> names = new ArrayList<>();
+        try (PagedSearch<Name> search = new PagedSearch<>(
+                ldapTemplate.getContextSource(),
+                pageSize,
+                base,
+                "(objectClass=*)",
+                subtreeNamesControls,
+                ctx -> LdapUtils.newLdapName(((DirContextOperations) ctx).getNameInNamespace()))) {
+            while (search.hasMore()) {
+                names.addAll(search.nextPage());
+            }
+        }
+        return names;
+    }
+
+    private boolean isSubtreeDeleteSupported() {
+        try {
+            boolean supported = ldapTemplate.executeReadOnly(ctx -> {
+                Attribute controls = ctx.getAttributes("", new String[]{"supportedControl"}).get("supportedControl");
+                return controls != null && controls.contains(SUBTREE_DELETE_CONTROL);
+            });
+            log.info("Subtree delete control is {}supported by the directory", supported ? "" : "not ");
+            return supported;
+        } catch (org.springframework.ldap.NamingException e) {
+            log.warn("Unable to read the controls supported by the directory: {}", e.getMessage());
+            return false;
+        }
     }
 
 }
@@ -0,0 +1,12 @@
+package no.fintlabs.portal.ldap;
+
+public enum LdapWriteMode {
+    /**
+     * Look the entry up before creating or updating it.
+     */
+    CHECK_EXISTS,
+    /**
+     * Send the add or modify straight away and let the directory report if the entry exists or not.
+     */
+    DIRECT
+}
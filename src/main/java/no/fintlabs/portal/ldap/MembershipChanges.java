@@ -0,0 +1,107 @@
+package no.fintlabs.portal.ldap;
+
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pending value level changes to the multi-valued link attributes of an entry.
+ * <p>
+ * The add and remove methods update the entry's list and record the change, so the change can be sent as
+ * ADD_ATTRIBUTE and REMOVE_ATTRIBUTE modifications instead of rewriting the whole attribute.
+ */
+public class MembershipChanges implements Serializable {
+
+    private final Map<String, Map<String, Change>> changes = new LinkedHashMap<>();
+
+    /**
+     * Adds the value to the attribute's values unless already present.
+     *
+     * @return the values as a {@link DnList}, to be stored back on the entry
+     */
+    public DnList add(String attribute, List<String> values, String value) {
+        DnList dns = DnList.of(values);
+        if (value != null && dns.add(value)) {
+            record(attribute, value, DirContext.ADD_ATTRIBUTE);
+        }
+        return dns;
+    }
+
+    /**
+     * Removes the value from the attribute's values if present.
+     *
+     * @return the values as a {@link DnList}, to be stored back on the entry
+     */
+    public DnList remove(String attribute, List<String> values, String value) {
+        DnList dns = DnList.of(values);
+        String stored = dns.find(value);
+        if (stored != null) {
+            dns.remove(stored);
+            record(attribute, stored, DirContext.REMOVE_ATTRIBUTE);
+        }
+        return dns;
+    }
+
+    public boolean isEmpty() {
+        return changes.values().stream().allMatch(Map::isEmpty);
+    }
+
+    public void clear() {
+        changes.clear();
+    }
+
+    public ModificationItem[] getModificationItems() {
+        List<ModificationItem> items = new ArrayList<>();
+        changes.forEach((attribute, values) -> {
+            BasicAttribute removed = new BasicAttribute(attribute);
+            BasicAttribute added = new BasicAttribute(attribute);
+            values.values().forEach(change -> (change.operation == DirContext.ADD_ATTRIBUTE ? added : removed).add(change.value));
+
+            if (removed.size() > 0) {
+                items.add(new ModificationItem(DirContext.REMOVE_ATTRIBUTE, removed));
+            }
+            if (added.size() > 0) {
+                items.add(new ModificationItem(DirContext.ADD_ATTRIBUTE, added));
+            }
+        });
+        return items.toArray(new ModificationItem[0]);
+    }
+
+    /**
+     * One modification per value, for retrying when the directory already had some of the values added or removed.
+     */
+    public List<ModificationItem> getSingleValueModificationItems() {
+        List<ModificationItem> items = new ArrayList<>();
+        changes.forEach((attribute, values) -> values.values().forEach(change ->
+                items.add(new ModificationItem(change.operation, new BasicAttribute(attribute, change.value)))
+        ));
+        return items;
+    }
+
+    private void record(String attribute, String value, int operation) {
+        Map<String, Change> values = changes.computeIfAbsent(attribute, a -> new LinkedHashMap<>());
+        String key = DnList.normalize(value);
+        Change previous = values.get(key);
+
+        if (previous != null && previous.operation != operation) {
+            values.remove(key);
+        } else {
+            values.put(key, new Change(operation, value));
+        }
+    }
+
+    private static class Change implements Serializable {
+        private final int operation;
+        private final String value;
+
+        private Change(int operation, String value) {
+            this.operation = operation;
+            this.value = value;
+        }
+    }
+}
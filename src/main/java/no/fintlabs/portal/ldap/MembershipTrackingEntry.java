@@ -0,0 +1,5 @@
+package no.fintlabs.portal.ldap;
+
+public interface MembershipTrackingEntry extends BasicLdapEntry {
+    MembershipChanges getMembershipChanges();
+}
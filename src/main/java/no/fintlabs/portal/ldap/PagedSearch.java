@@ -0,0 +1,51 @@
+package no.fintlabs.portal.ldap;
+
+import org.springframework.ldap.control.PagedResultsDirContextProcessor;
+import org.springframework.ldap.core.ContextMapper;
+import org.springframework.ldap.core.ContextSource;
+import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.core.support.SingleContextSource;
+
+import javax.naming.Name;
+import javax.naming.directory.SearchControls;
+import java.util.List;
+
+/**
+ * A search fetched one page at a time using the paged results control. All pages are read on the same
+ * connection, as the paging cookie is only valid on the connection that issued it.
+ */
+class PagedSearch<T> implements AutoCloseable {
+
+    private final SingleContextSource contextSource;
+    private final LdapTemplate ldapTemplate;
+    private final PagedResultsDirContextProcessor processor;
+    private final Name base;
+    private final String filter;
+    private final SearchControls searchControls;
+    private final ContextMapper<T> mapper;
+    private boolean started;
+
+    PagedSearch(ContextSource source, int pageSize, Name base, String filter, SearchControls searchControls, ContextMapper<T> mapper) {
+        this.contextSource = new SingleContextSource(source.getReadOnlyContext());
+        this.ldapTemplate = new LdapTemplate(contextSource);
+        this.processor = new PagedResultsDirContextProcessor(pageSize);
+        this.base = base;
+        this.filter = filter;
+        this.searchControls = searchControls;
+        this.mapper = mapper;
+    }
+
+    boolean hasMore() {
+        return !started || processor.hasMore();
+    }
+
+    List<T> nextPage() {
+        started = true;
+        return ldapTemplate.search(base, filter, searchControls, mapper, processor);
+    }
+
+    @Override
+    public void close() {
+        contextSource.destroy();
+    }
+}
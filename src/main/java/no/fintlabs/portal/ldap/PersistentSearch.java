@@ -0,0 +1,109 @@
+package no.fintlabs.portal.ldap;
+
+import lombok.Data;
+
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The request and entry change notification controls of the persistent search extension
+ * (draft-ietf-ldapext-psearch). JNDI has no classes for them, so they are encoded and decoded here.
+ */
+final class PersistentSearch {
+
+    static final String REQUEST_CONTROL = "2.16.840.1.113730.3.4.3";
+    static final String ENTRY_CHANGE_CONTROL = "2.16.840.1.113730.3.4.7";
+
+    static final int ADD = 1;
+    static final int DELETE = 2;
+    static final int MODIFY = 4;
+    static final int MOD_DN = 8;
+
+    /**
+     * SEQUENCE { changeTypes INTEGER (all), changesOnly BOOLEAN TRUE, returnECs BOOLEAN TRUE }
+     */
+    private static final byte[] REQUEST_VALUE = {
+            0x30, 0x09,
+            0x02, 0x01, ADD | DELETE | MODIFY | MOD_DN,
+            0x01, 0x01, (byte) 0xFF,
+            0x01, 0x01, (byte) 0xFF
+    };
+
+    private PersistentSearch() {
+    }
+
+    static Control requestControl() {
+        return new BasicControl(REQUEST_CONTROL, true, REQUEST_VALUE.clone());
+    }
+
+    /**
+     * The change described by the entry change notification among the controls, or {@code null} if there is none.
+     */
+    static EntryChange entryChange(Control[] controls) {
+        if (controls == null) {
+            return null;
+        }
+        for (Control control : controls) {
+            if (ENTRY_CHANGE_CONTROL.equals(control.getID())) {
+                return decode(control.getEncodedValue());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes SEQUENCE { changeType ENUMERATED, previousDN LDAPDN OPTIONAL, changeNumber INTEGER OPTIONAL }.
+     */
+    static EntryChange decode(byte[] value) {
+        try {
+            ByteBuffer ber = ByteBuffer.wrap(value);
+            expect(ber, 0x30);
+            readLength(ber);
+
+            expect(ber, 0x0A);
+            int changeType = 0;
+            for (int length = readLength(ber); length > 0; length--) {
+                changeType = (changeType << 8) | (ber.get() & 0xFF);
+            }
+
+            String previousDn = null;
+            if (ber.hasRemaining() && ber.get(ber.position()) == 0x04) {
+                ber.get();
+                byte[] dn = new byte[readLength(ber)];
+                ber.get(dn);
+                previousDn = new String(dn, StandardCharsets.UTF_8);
+            }
+            return new EntryChange(changeType, previousDn);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated entry change notification", e);
+        }
+    }
+
+    private static void expect(ByteBuffer ber, int tag) {
+        int actual = ber.get() & 0xFF;
+        if (actual != tag) {
+            throw new IllegalArgumentException(String.format("Expected tag 0x%02x, found 0x%02x", tag, actual));
+        }
+    }
+
+    private static int readLength(ByteBuffer ber) {
+        int first = ber.get() & 0xFF;
+        if (first < 0x80) {
+            return first;
+        }
+        int length = 0;
+        for (int octets = first & 0x7F; octets > 0; octets--) {
+            length = (length << 8) | (ber.get() & 0xFF);
+        }
+        return length;
+    }
+
+    @Data
+    static final class EntryChange {
+        private final int changeType;
+        private final String previousDn;
+    }
+}
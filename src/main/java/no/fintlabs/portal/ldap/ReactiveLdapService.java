@@ -0,0 +1,105 @@
+package no.fintlabs.portal.ldap;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.ldap.filter.Filter;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade for {@link LdapService}.
+ * <p>
+ * Directory calls run on a dedicated scheduler with {@code reactive.threads} threads, sized to the connection pool
+ * so calls wait for a thread rather than for a connection. At most {@code reactive.queue-capacity} calls wait;
+ * beyond that calls fail with a rejected execution error. The executor is published as the {@code ldap} executor
+ * metrics. A write made by the subscribing thread is carried over to the scheduler thread, so reads that follow it
+ * still go to the master.
+ */
+@Slf4j
+@Service
+public class ReactiveLdapService implements DisposableBean {
+
+    private final LdapService ldapService;
+    private final ReadYourWrites readYourWrites;
+    private final ExecutorService executor;
+    private final Scheduler scheduler;
+
+    public ReactiveLdapService(
+            LdapService ldapService,
+            ReadYourWrites readYourWrites,
+            @Value("${fint.ldap.reactive.threads:32}") int threads,
+            @Value("${fint.ldap.reactive.queue-capacity:10000}") int queueCapacity,
+            MeterRegistry meterRegistry
+    ) {
+        this.ldapService = ldapService;
+        this.readYourWrites = readYourWrites;
+
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("ldap-"));
+        threadPool.allowCoreThreadTimeOut(true);
+        executor = ExecutorServiceMetrics.monitor(meterRegistry, threadPool, "ldap");
+        scheduler = Schedulers.fromExecutorService(executor, "ldap");
+
+        log.info("Reactive LDAP scheduler: {} threads, {} queued calls", threads, queueCapacity);
+    }
+
+    public <T> Mono<T> getEntry(String dn, Class<T> type) {
+        return execute(() -> ldapService.getEntry(dn, type));
+    }
+
+    public <T> Flux<T> getAll(String base, Class<T> type) {
+        return execute(() -> ldapService.getAll(base, type)).flatMapIterable(Function.identity());
+    }
+
+    public <T> Flux<T> getAll(String base, Class<T> type, Filter filter) {
+        return execute(() -> ldapService.getAll(base, type, filter)).flatMapIterable(Function.identity());
+    }
+
+    public Mono<Boolean> createEntry(BasicLdapEntry entry) {
+        return execute(() -> ldapService.createEntry(entry));
+    }
+
+    public Mono<Boolean> updateEntry(BasicLdapEntry entry) {
+        return execute(() -> ldapService.updateEntry(entry));
+    }
+
+    public Mono<Void> deleteEntry(BasicLdapEntry entry) {
+        return execute(() -> {
+            ldapService.deleteEntry(entry);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a blocking directory call on the LDAP scheduler. A {@code null} result completes empty.
+     */
+    public <T> Mono<T> execute(Supplier<T> call) {
+        return Mono.defer(() -> {
+            Long written = readYourWrites.capture();
+            return Mono.fromSupplier(() -> {
+                readYourWrites.restore(written);
+                return call.get();
+            }).subscribeOn(scheduler);
+        });
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+        executor.shutdown();
+    }
+}
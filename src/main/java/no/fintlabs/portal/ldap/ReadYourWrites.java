@@ -0,0 +1,80 @@
+package no.fintlabs.portal.ldap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+
+/**
+ * Remembers when writes were made, so reads that follow a write can be sent to the master rather than to a read
+ * replica that may not have the write yet.
+ * <p>
+ * The window is kept per thread, which covers a request or a Kafka message handled on one thread. A thread picked
+ * up for the next request within the window also reads from the master, which costs load but is never stale. Only
+ * active when read replicas are configured.
+ */
+@Component
+public class ReadYourWrites {
+
+    private final boolean enabled;
+    private final Duration window;
+    private final long windowNanos;
+    private final ThreadLocal<Long> lastWriteOnThread = new ThreadLocal<>();
+
+    public ReadYourWrites(
+            @Value("${fint.ldap.replica.urls:}") String replicaUrls,
+            @Value("${fint.ldap.replica.read-your-writes-window:5s}") Duration window
+    ) {
+        this.enabled = StringUtils.hasText(replicaUrls);
+        this.window = window;
+        this.windowNanos = window.toNanos();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * How long a write may take to reach the replicas.
+     */
+    public Duration getWindow() {
+        return window;
+    }
+
+    public void written() {
+        lastWriteOnThread.set(System.nanoTime());
+    }
+
+    /**
+     * The time of this thread's last write, to hand over to the thread that continues its work.
+     */
+    public Long capture() {
+        return lastWriteOnThread.get();
+    }
+
+    /**
+     * Takes over a write captured on another thread, unless this thread has written since.
+     */
+    public void restore(Long written) {
+        Long current = lastWriteOnThread.get();
+        if (written != null && (current == null || written - current > 0)) {
+            lastWriteOnThread.set(written);
+        }
+    }
+
+    /**
+     * Whether this thread wrote within the window, and should read from the master.
+     */
+    public boolean isWithinWindow() {
+        Long written = lastWriteOnThread.get();
+        return written != null && System.nanoTime() - written < windowNanos;
+    }
+
+    /**
+     * Whether a write made at the given {@link System#nanoTime()} may not have reached the replicas yet.
+     */
+    public boolean isWithinWindow(long written) {
+        return System.nanoTime() - written < windowNanos;
+    }
+}
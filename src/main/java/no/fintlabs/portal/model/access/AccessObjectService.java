@@ -1,33 +1,40 @@
 package no.fintlabs.portal.model.access;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import no.fintlabs.portal.ldap.DnTemplate;
 import no.fintlabs.portal.utilities.LdapConstants;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.ldap.support.LdapNameBuilder;
 import org.springframework.stereotype.Service;
 
 import javax.naming.Name;
 
 @Service
 public class AccessObjectService {
-    private final String organisationBase;
+
+    private static final int ORGANISATIONS = 1000;
+
+    private final DnTemplate organisations;
+    private final Cache<String, DnTemplate> accessBases = CacheBuilder.newBuilder()
+            .maximumSize(ORGANISATIONS)
+            .build();
 
     public AccessObjectService(
             @Value("${fint.ldap.organisation-base}") String organisationBase
     ) {
-        this.organisationBase = organisationBase;
+        this.organisations = DnTemplate.of(organisationBase);
     }
 
     public Name getAccessBase(String orgName) {
-        return LdapNameBuilder.newInstance(organisationBase)
-                .add(LdapConstants.OU, orgName)
-                .add(LdapConstants.OU, "access")
-                .build();
+        return getAccessBaseTemplate(orgName).toName();
     }
 
     public String getAccessDn(String accessId, String orgName) {
-        return LdapNameBuilder.newInstance(getAccessBase(orgName))
-                .add(LdapConstants.OU, accessId)
-                .build()
-                .toString();
+        return getAccessBaseTemplate(orgName).dn(LdapConstants.OU, accessId);
+    }
+
+    private DnTemplate getAccessBaseTemplate(String orgName) {
+        return accessBases.asMap().computeIfAbsent(orgName, org ->
+                organisations.child(LdapConstants.OU, org).child(LdapConstants.OU, "access"));
     }
 }
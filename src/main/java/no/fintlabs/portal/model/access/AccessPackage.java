@@ -1,12 +1,17 @@
 package no.fintlabs.portal.model.access;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 import lombok.Data;
-import no.fintlabs.portal.ldap.BasicLdapEntry;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import no.fintlabs.portal.ldap.MembershipChanges;
+import no.fintlabs.portal.ldap.MembershipTrackingEntry;
 import org.springframework.ldap.odm.annotations.Attribute;
 import org.springframework.ldap.odm.annotations.Entry;
 import org.springframework.ldap.odm.annotations.Id;
+import org.springframework.ldap.odm.annotations.Transient;
 import org.springframework.ldap.support.LdapNameBuilder;
 
 import javax.naming.Name;
@@ -15,7 +20,7 @@ import java.util.List;
 @ApiModel
 @Data
 @Entry(objectClasses = {"organizationalUnit", "top", "fintAccess"})
-public final class AccessPackage implements BasicLdapEntry {
+public final class AccessPackage implements MembershipTrackingEntry {
     @Id
     private Name dn;
 
@@ -44,24 +49,26 @@ public final class AccessPackage implements BasicLdapEntry {
     @Attribute(name = "description")
     private String description;
 
+    @JsonIgnore
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final MembershipChanges membershipChanges = new MembershipChanges();
+
     public void removeClient(String clientDn) {
-        clients.removeIf(adapter -> adapter.equalsIgnoreCase(clientDn));
+        clients = membershipChanges.remove("fintAccessClients", clients, clientDn);
     }
 
     public void addClient(String clientDn) {
-        if (clients.stream().noneMatch(clientDn::equalsIgnoreCase)) {
-            clients.add(clientDn);
-        }
+        clients = membershipChanges.add("fintAccessClients", clients, clientDn);
     }
 
     public void removeComponent(String componentDn) {
-        components.removeIf(adapter -> adapter.equalsIgnoreCase(componentDn));
+        components = membershipChanges.remove("fintAccessComponents", components, componentDn);
     }
 
     public void addComponent(String clientDn) {
-        if (components.stream().noneMatch(clientDn::equalsIgnoreCase)) {
-            components.add(clientDn);
-        }
+        components = membershipChanges.add("fintAccessComponents", components, clientDn);
     }
 
     public String getSelf() {
@@ -1,32 +1,28 @@
 package no.fintlabs.portal.model.access;
 
+import no.fintlabs.portal.ldap.DnTemplate;
 import no.fintlabs.portal.utilities.LdapConstants;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.ldap.support.LdapNameBuilder;
 import org.springframework.stereotype.Service;
 
 import javax.naming.Name;
 
 @Service
 public class AccessPackageTemplateObjectService {
-    private final String accessTemplateBase;
+    private final DnTemplate accessTemplateBase;
 
     public AccessPackageTemplateObjectService(
             @Value("${fint.ldap.access.template-base}") String accessTemplateOrganisationBase
     ) {
-        this.accessTemplateBase = accessTemplateOrganisationBase;
+        this.accessTemplateBase = DnTemplate.of(accessTemplateOrganisationBase);
     }
 
     public Name getAccessBase() {
-        return LdapNameBuilder.newInstance(accessTemplateBase)
-                .build();
+        return accessTemplateBase.toName();
     }
 
     public String getAccessDn(String accessId) {
-        return LdapNameBuilder.newInstance(getAccessBase())
-                .add(LdapConstants.OU, accessId)
-                .build()
-                .toString();
+        return accessTemplateBase.dn(LdapConstants.OU, accessId);
     }
 }
 
@@ -85,14 +85,14 @@ public class AccessService {
     public void linkClientToAccess(AccessPackage accessPackage, Client client) {
         accessPackage.addClient(Objects.requireNonNull(client.getDn()));
         client.setAccessPackage(accessPackage.getDn());
-        ldapService.updateEntry(accessPackage);
-        ldapService.updateEntry(client);
+        ldapService.updateMemberships(accessPackage);
+        ldapService.updateMemberships(client);
     }
 
     public void unlinkClientFromAccess(AccessPackage accessPackage, Client client) {
         accessPackage.removeClient(client.getDn());
         client.getAccessPackages().clear();
-        ldapService.updateEntry(accessPackage);
+        ldapService.updateMemberships(accessPackage);
         ldapService.updateEntry(client);
     }
 
@@ -1,22 +1,25 @@
 package no.fintlabs.portal.model.adapter;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 import lombok.ToString;
-import no.fintlabs.portal.ldap.BasicLdapEntry;
+import no.fintlabs.portal.ldap.DnList;
+import no.fintlabs.portal.ldap.MembershipChanges;
+import no.fintlabs.portal.ldap.MembershipTrackingEntry;
 import org.springframework.ldap.odm.annotations.Attribute;
 import org.springframework.ldap.odm.annotations.Entry;
 import org.springframework.ldap.odm.annotations.Id;
+import org.springframework.ldap.odm.annotations.Transient;
 import org.springframework.ldap.support.LdapNameBuilder;
 
 import javax.naming.Name;
-import java.util.ArrayList;
 import java.util.List;
 
 @ApiModel
-@ToString(exclude = {"password"})
+@ToString(exclude = {"password", "membershipChanges"})
 @Entry(objectClasses = {"fintAdapter", "inetOrgPerson", "organizationalPerson", "person", "top"})
-public final class Adapter implements BasicLdapEntry {
+public final class Adapter implements MembershipTrackingEntry {
 
     @ApiModelProperty(value = "DN of the adapter. This is automatically set.")
     @Id
@@ -51,11 +54,15 @@ public final class Adapter implements BasicLdapEntry {
     @Attribute(name = "fintAdapterAssetIds")
     private List<String> assetIds;
 
+    @JsonIgnore
+    @Transient
+    private final MembershipChanges membershipChanges = new MembershipChanges();
+
 
     public Adapter() {
-        components = new ArrayList<>();
-        assets = new ArrayList<>();
-        assetIds = new ArrayList<>();
+        components = new DnList();
+        assets = new DnList();
+        assetIds = new DnList();
     }
 
     public List<String> getAssetIds() {
@@ -63,34 +70,28 @@ public final class Adapter implements BasicLdapEntry {
     }
 
     public void addAssetId(String assetId) {
-        if (!assetIds.stream().anyMatch(assetId::equalsIgnoreCase)) {
-            assetIds.add(assetId);
-        }
+        assetIds = membershipChanges.add("fintAdapterAssetIds", assetIds, assetId);
     }
 
     public void removeAssetId(String assetId) {
-        assetIds.removeIf(asset -> asset.equalsIgnoreCase(assetId));
+        assetIds = membershipChanges.remove("fintAdapterAssetIds", assetIds, assetId);
     }
 
 
     public void addComponent(String componentDn) {
-        if (!components.stream().anyMatch(componentDn::equalsIgnoreCase)) {
-            components.add(componentDn);
-        }
+        components = membershipChanges.add("fintAdapterComponents", components, componentDn);
     }
 
     public void removeComponent(String componentDn) {
-        components.removeIf(component -> component.equalsIgnoreCase(componentDn));
+        components = membershipChanges.remove("fintAdapterComponents", components, componentDn);
     }
 
     public void addAsset(String assetId) {
-        if (!assets.stream().anyMatch(assetId::equalsIgnoreCase)) {
-            assets.add(assetId);
-        }
+        assets = membershipChanges.add("fintAdapterAssets", assets, assetId);
     }
 
     public void removeAsset(String assetId) {
-        assets.removeIf(asset -> asset.equalsIgnoreCase(assetId));
+        assets = membershipChanges.remove("fintAdapterAssets", assets, assetId);
     }
 
     public List<String> getComponents() {
@@ -156,4 +157,9 @@ public final class Adapter implements BasicLdapEntry {
         return assets;
     }
 
+    @Override
+    public MembershipChanges getMembershipChanges() {
+        return membershipChanges;
+    }
+
 }
@@ -1,10 +1,12 @@
 package no.fintlabs.portal.model.adapter;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import no.fintlabs.portal.ldap.DnTemplate;
 import no.fintlabs.portal.model.organisation.Organisation;
 import no.fintlabs.portal.utilities.LdapConstants;
 import no.fintlabs.portal.utilities.PasswordUtility;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.ldap.support.LdapNameBuilder;
 import org.springframework.stereotype.Service;
 
 import javax.naming.Name;
@@ -12,30 +14,35 @@ import javax.naming.Name;
 @Service
 public class AdapterObjectService {
 
+    private static final int ORGANISATIONS = 1000;
+
+    private DnTemplate organisations;
+    private final Cache<String, DnTemplate> adapterBases = CacheBuilder.newBuilder()
+            .maximumSize(ORGANISATIONS)
+            .build();
+
     @Value("${fint.ldap.organisation-base}")
-    private String organisationBase;
+    public void setOrganisationBase(String organisationBase) {
+        organisations = DnTemplate.of(organisationBase);
+        adapterBases.invalidateAll();
+    }
 
     public void setupAdapter(Adapter adapter, Organisation organisation) {
         adapter.setName(String.format("%s@adapter.%s", adapter.getName(), organisation.getPrimaryAssetId()));
-        adapter.setDn(
-                LdapNameBuilder.newInstance(getAdapterBase(organisation.getName()))
-                        .add(LdapConstants.CN, adapter.getName())
-                        .build()
-        );
+        adapter.setDn(getAdapterBaseTemplate(organisation.getName()).name(LdapConstants.CN, adapter.getName()));
         adapter.setSecret(PasswordUtility.generateSecret());
     }
 
     public Name getAdapterBase(String orgUuid) {
-        return LdapNameBuilder.newInstance(organisationBase)
-                .add(LdapConstants.OU, orgUuid)
-                .add(LdapConstants.OU, LdapConstants.ADAPTER_CONTAINER_NAME)
-                .build();
+        return getAdapterBaseTemplate(orgUuid).toName();
     }
 
     public String getAdapterDn(String adapterUuid, String orgUuid) {
-        return LdapNameBuilder.newInstance(getAdapterBase(orgUuid))
-                .add(LdapConstants.CN, adapterUuid)
-                .build()
-                .toString();
+        return getAdapterBaseTemplate(orgUuid).dn(LdapConstants.CN, adapterUuid);
+    }
+
+    private DnTemplate getAdapterBaseTemplate(String orgUuid) {
+        return adapterBases.asMap().computeIfAbsent(orgUuid, org ->
+                organisations.child(LdapConstants.OU, org).child(LdapConstants.OU, LdapConstants.ADAPTER_CONTAINER_NAME));
     }
 }
@@ -1,7 +1,10 @@
 package no.fintlabs.portal.model.adapter;
 
+import com.google.common.base.Suppliers;
 import lombok.extern.slf4j.Slf4j;
+import no.fintlabs.portal.ldap.DirectoryGraphService;
 import no.fintlabs.portal.ldap.LdapService;
+import no.fintlabs.portal.ldap.ReactiveLdapService;
 import no.fintlabs.portal.model.asset.Asset;
 import no.fintlabs.portal.model.asset.AssetService;
 import no.fintlabs.portal.model.organisation.Organisation;
@@ -9,9 +12,14 @@ import no.fintlabs.portal.oauth.NamOAuthClientService;
 import no.fintlabs.portal.oauth.OAuthClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
@@ -23,36 +31,81 @@ public class AdapterService {
     @Autowired
     private LdapService ldapService;
 
+    @Autowired
+    private ReactiveLdapService reactiveLdapService;
+
     @Autowired
     private NamOAuthClientService namOAuthClientService;
 
     @Autowired
     private AssetService assetService;
 
+    @Autowired
+    private DirectoryGraphService directoryGraph;
+
     public boolean addAdapter(Adapter adapter, Organisation organisation) {
         adapterObjectService.setupAdapter(adapter, organisation);
 
-        OAuthClient oAuthClient = namOAuthClientService.addOAuthClient(
-                String.format("a_%s", adapter.getName()
-                        .replace("@", "_")
-                        .replace(".", "_")
-                )
-        );
+        OAuthClient oAuthClient = namOAuthClientService.addOAuthClient(getOAuthClientName(adapter));
+
+        return createAdapter(adapter, oAuthClient, () -> assetService.getPrimaryAsset(organisation));
+    }
 
+    /**
+     * Adds the adapters, registering their OAuth clients in bulk first. Adapters whose registration fails, or whose OAuth client
+     * name collides with an earlier adapter in the batch, are left out.
+     *
+     * @return the adapters that were added
+     */
+    public List<Adapter> addAdapters(List<Adapter> adapters, Organisation organisation) {
+        adapters.forEach(adapter -> adapterObjectService.setupAdapter(adapter, organisation));
+
+        Map<String, Adapter> adaptersByOAuthClientName = new LinkedHashMap<>();
+        adapters.forEach(adapter -> {
+            Adapter existing = adaptersByOAuthClientName.putIfAbsent(getOAuthClientName(adapter), adapter);
+            if (existing != null) {
+                log.error("Adapter {} was not added: OAuth client name {} is already used by adapter {}",
+                        adapter.getName(), getOAuthClientName(adapter), existing.getName());
+            }
+        });
+        Supplier<Asset> primaryAsset = Suppliers.memoize(() -> assetService.getPrimaryAsset(organisation));
+
+        List<Adapter> added = new ArrayList<>();
+        namOAuthClientService.addOAuthClients(new ArrayList<>(adaptersByOAuthClientName.keySet())).forEach(registration -> {
+            Adapter adapter = adaptersByOAuthClientName.get(registration.getName());
+            if (!registration.isSuccessful()) {
+                log.error("Adapter {} was not added: {}", adapter.getName(), registration.getErrorMessage());
+            } else if (createAdapter(adapter, registration.getClient(), primaryAsset)) {
+                added.add(adapter);
+            }
+        });
+        return added;
+    }
+
+    private boolean createAdapter(Adapter adapter, OAuthClient oAuthClient, Supplier<Asset> primaryAssetSupplier) {
         adapter.setClientId(oAuthClient.getClientId());
 
         boolean created = ldapService.createEntry(adapter);
         if (created) {
-            Asset primaryAsset = assetService.getPrimaryAsset(organisation);
-            assetService.linkAdapterToAsset(primaryAsset, adapter);
+            assetService.linkAdapterToAsset(primaryAssetSupplier.get(), adapter);
         }
         return created;
     }
 
+    private String getOAuthClientName(Adapter adapter) {
+        return String.format("a_%s", adapter.getName()
+                .replace("@", "_")
+                .replace(".", "_")
+        );
+    }
+
     public List<Adapter> getAdapters(String orgName) {
         //List<Adapter> adapters =
 
-        return ldapService.getAll(adapterObjectService.getAdapterBase(orgName).toString(), Adapter.class);
+        String base = adapterObjectService.getAdapterBase(orgName).toString();
+        return directoryGraph.current(base)
+                .map(g -> g.getAll(base, Adapter.class))
+                .orElseGet(() -> ldapService.getAll(base, Adapter.class));
 
                 /*
         adapters.forEach(adapter -> adapter.getAssets().forEach(asset -> {
@@ -81,6 +134,13 @@ public class AdapterService {
         //return adapter;
     }
 
+    /**
+     * Non-blocking {@link #getAdapter(String, String)}.
+     */
+    public Mono<Adapter> findAdapter(String adapterName, String orgName) {
+        return reactiveLdapService.getEntry(adapterObjectService.getAdapterDn(adapterName, orgName), Adapter.class);
+    }
+
     public Optional<Adapter> getAdapterByDn(String dn) {
         return Optional.ofNullable(ldapService.getEntry(dn, Adapter.class));
     }
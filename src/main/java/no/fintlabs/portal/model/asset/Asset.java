@@ -1,22 +1,27 @@
 package no.fintlabs.portal.model.asset;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 import lombok.Data;
-import no.fintlabs.portal.ldap.BasicLdapEntry;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import no.fintlabs.portal.ldap.DnList;
+import no.fintlabs.portal.ldap.MembershipChanges;
+import no.fintlabs.portal.ldap.MembershipTrackingEntry;
 import org.springframework.ldap.odm.annotations.Attribute;
 import org.springframework.ldap.odm.annotations.Entry;
 import org.springframework.ldap.odm.annotations.Id;
+import org.springframework.ldap.odm.annotations.Transient;
 import org.springframework.ldap.support.LdapNameBuilder;
 
 import javax.naming.Name;
-import java.util.ArrayList;
 import java.util.List;
 
 @ApiModel
 @Data
 @Entry(objectClasses = {"organizationalUnit", "top", "fintAsset"})
-public final class Asset implements BasicLdapEntry {
+public final class Asset implements MembershipTrackingEntry {
 
     @Id
     private Name dn;
@@ -44,9 +49,15 @@ public final class Asset implements BasicLdapEntry {
     @Attribute(name = "fintAssetPrimary")
     private boolean primaryAsset;
 
+    @JsonIgnore
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final MembershipChanges membershipChanges = new MembershipChanges();
+
     public Asset() {
-        clients = new ArrayList<>();
-        adapters = new ArrayList<>();
+        clients = new DnList();
+        adapters = new DnList();
     }
 
     public String getOrganisation() {
@@ -58,23 +69,19 @@ public final class Asset implements BasicLdapEntry {
     }
 
     public void addClient(String clientDn) {
-        if (clients.stream().noneMatch(clientDn::equalsIgnoreCase)) {
-            clients.add(clientDn);
-        }
+        clients = membershipChanges.add("fintAssetClients", clients, clientDn);
     }
 
     public void removeAdapter(String adapterDn) {
-        adapters.removeIf(adapter -> adapter.equalsIgnoreCase(adapterDn));
+        adapters = membershipChanges.remove("fintAssetAdapters", adapters, adapterDn);
     }
 
     public void addAdapter(String adapterDn) {
-        if (adapters.stream().noneMatch(adapterDn::equalsIgnoreCase)) {
-            adapters.add(adapterDn);
-        }
+        adapters = membershipChanges.add("fintAssetAdapters", adapters, adapterDn);
     }
 
     public void removeClient(String clientDn) {
-        clients.removeIf(client -> client.equalsIgnoreCase(clientDn));
+        clients = membershipChanges.remove("fintAssetClients", clients, clientDn);
     }
 
     @Override
@@ -6,20 +6,39 @@ import no.fintlabs.portal.model.adapter.Adapter;
 import no.fintlabs.portal.model.client.Client;
 import no.fintlabs.portal.model.organisation.Organisation;
 import no.fintlabs.portal.utilities.LdapConstants;
+import com.google.common.collect.Lists;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.ldap.filter.EqualsFilter;
+import org.springframework.ldap.filter.OrFilter;
 import org.springframework.ldap.support.LdapNameBuilder;
+import org.springframework.ldap.support.LdapUtils;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
+import javax.naming.Name;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class AssetService {
 
+    private static final int ORGANISATION_FILTER_CHUNK_SIZE = 200;
+
     @Autowired
     private LdapService ldapService;
 
+    @Value("${fint.ldap.organisation-base}")
+    private String organisationBase;
+
     private boolean createAsset(Asset asset, Organisation organisation, boolean primary) {
         asset.setName(asset.getAssetId().replace(".", "_"));
         asset.setDn(
@@ -52,10 +71,19 @@ public class AssetService {
 
     public void removeAsset(Asset asset) {
         ldapService.deleteEntry(asset);
+
+        if (asset.isPrimaryAsset()) {
+            updateOrganisationPrimaryAsset(asset.getOrganisation(), null);
+        }
     }
 
     public boolean updateAsset(Asset asset) {
-        return ldapService.updateEntry(asset);
+        boolean updated = ldapService.updateEntry(asset);
+
+        if (updated && asset.isPrimaryAsset()) {
+            updateOrganisationPrimaryAsset(asset.getOrganisation(), asset);
+        }
+        return updated;
     }
 
     public void linkClientToAsset(Asset asset, Client client) {
@@ -64,7 +92,7 @@ public class AssetService {
         client.setAssetId(asset.getAssetId());
         client.setAsset(asset.getDn());
 
-        ldapService.updateEntry(asset);
+        ldapService.updateMemberships(asset);
         ldapService.updateEntry(client);
     }
 
@@ -74,7 +102,7 @@ public class AssetService {
         client.setAssetId(null);
         client.setAsset(null);
 
-        ldapService.updateEntry(asset);
+        ldapService.updateMemberships(asset);
         ldapService.updateEntry(client);
     }
 
@@ -84,8 +112,8 @@ public class AssetService {
         adapter.addAsset(asset.getDn());
         adapter.addAssetId(asset.getAssetId());
 
-        ldapService.updateEntry(asset);
-        ldapService.updateEntry(adapter);
+        ldapService.updateMemberships(asset);
+        ldapService.updateMemberships(adapter);
     }
 
     public void unlinkAdapterFromAsset(Asset asset, Adapter adapter) {
@@ -94,8 +122,8 @@ public class AssetService {
         adapter.removeAsset(asset.getDn());
         adapter.removeAssetId(asset.getAssetId());
 
-        ldapService.updateEntry(asset);
-        ldapService.updateEntry(adapter);
+        ldapService.updateMemberships(asset);
+        ldapService.updateMemberships(adapter);
     }
 
     public List<Asset> getAssets(Organisation organisation) {
@@ -106,14 +134,65 @@ public class AssetService {
                 Asset.class);
     }
 
+    /**
+     * Streams the assets of the given organisations, searching the organisation base once per
+     * {@value #ORGANISATION_FILTER_CHUNK_SIZE} organisations instead of once per organisation.
+     */
+    public Flux<Asset> streamAssets(Collection<String> organisationDns) {
+        return Flux.fromIterable(Lists.partition(new ArrayList<>(organisationDns), ORGANISATION_FILTER_CHUNK_SIZE))
+                .concatMapIterable(chunk -> {
+                    OrFilter organisations = new OrFilter();
+                    chunk.forEach(dn -> organisations.or(new EqualsFilter("fintAssetOrganisation", dn)));
+                    List<Asset> assets = ldapService.getAll(organisationBase, Asset.class, organisations);
+                    return assets == null ? Collections.emptyList() : assets;
+                });
+    }
+
     public Optional<Asset> getAsset(String dn) {
         return Optional.ofNullable(ldapService.getEntry(dn, Asset.class));
     }
 
     public Asset getPrimaryAsset(Organisation organisation) {
+        if (StringUtils.isNotEmpty(organisation.getPrimaryAsset())) {
+            Optional<Asset> primaryAsset = getAsset(organisation.getPrimaryAsset());
+            if (primaryAsset.isPresent()) {
+                return primaryAsset.get();
+            }
+        }
         return getAssets(organisation).stream().filter(asset -> asset.isPrimaryAsset()).findFirst().orElse(new Asset());
     }
 
+    /**
+     * Finds the primary assets of all organisations below the base with a single search, keyed by organisation DN.
+     */
+    public Map<Name, Asset> getPrimaryAssetsByOrganisation(String base) {
+        List<Asset> primaryAssets = ldapService.getAll(base, Asset.class, new EqualsFilter("fintAssetPrimary", "TRUE"));
+        if (primaryAssets == null) {
+            return Collections.emptyMap();
+        }
+        return primaryAssets.stream()
+                .filter(asset -> asset.getOrganisation() != null)
+                .collect(Collectors.toMap(asset -> LdapUtils.newLdapName(asset.getOrganisation()), Function.identity(), (a, b) -> a));
+    }
+
+    private void updateOrganisationPrimaryAsset(String organisationDn, Asset primaryAsset) {
+        if (organisationDn == null) {
+            return;
+        }
+        Organisation organisation = ldapService.getEntry(organisationDn, Organisation.class);
+        if (organisation == null) {
+            return;
+        }
+
+        String assetId = primaryAsset == null ? null : primaryAsset.getAssetId();
+        String assetDn = primaryAsset == null ? null : primaryAsset.getDn();
+        if (!Objects.equals(assetId, organisation.getPrimaryAssetId()) || !Objects.equals(assetDn, organisation.getPrimaryAsset())) {
+            organisation.setPrimaryAssetId(assetId);
+            organisation.setPrimaryAsset(assetDn);
+            ldapService.updateEntry(organisation);
+        }
+    }
+
     private boolean isIllegalAssetID(String assetId) {
         return StringUtils.isBlank(assetId)
                 || !StringUtils.isAsciiPrintable(assetId)
@@ -1,12 +1,16 @@
 package no.fintlabs.portal.model.client;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 import lombok.*;
-import no.fintlabs.portal.ldap.BasicLdapEntry;
+import no.fintlabs.portal.ldap.DnList;
+import no.fintlabs.portal.ldap.MembershipChanges;
+import no.fintlabs.portal.ldap.MembershipTrackingEntry;
 import org.springframework.ldap.odm.annotations.Attribute;
 import org.springframework.ldap.odm.annotations.Entry;
 import org.springframework.ldap.odm.annotations.Id;
+import org.springframework.ldap.odm.annotations.Transient;
 import org.springframework.ldap.support.LdapNameBuilder;
 
 import javax.naming.Name;
@@ -15,9 +19,9 @@ import java.util.List;
 
 @AllArgsConstructor
 @ApiModel
-@ToString(exclude = {"password"})
+@ToString(exclude = {"password", "membershipChanges"})
 @Entry(objectClasses = {"fintClient", "inetOrgPerson", "organizationalPerson", "person", "top"})
-public final class Client implements BasicLdapEntry {
+public final class Client implements MembershipTrackingEntry {
 
     @ApiModelProperty(value = "DN of the client. This is automatically set.")
     @Id
@@ -56,24 +60,27 @@ public final class Client implements BasicLdapEntry {
     @Attribute(name = "fintClientAccessPackages")
     private List<String> accessPackages;
 
+    @JsonIgnore
+    @Transient
+    private final MembershipChanges membershipChanges = new MembershipChanges();
+
     public Client() {
-        components = new ArrayList<>();
-        accessPackages = new ArrayList<>();
+        components = new DnList();
+        accessPackages = new DnList();
     }
 
     public void addComponent(String componentDn) {
-        if (components.stream().noneMatch(componentDn::equalsIgnoreCase)) {
-            components.add(componentDn);
-        }
+        components = membershipChanges.add("fintClientComponents", components, componentDn);
     }
 
     public void removeComponent(String componentDn) {
-        components.removeIf(component -> component.equalsIgnoreCase(componentDn));
+        components = membershipChanges.remove("fintClientComponents", components, componentDn);
     }
 
     public void setAccessPackage(String accessPackageDn) {
-        accessPackages.clear();
-        accessPackages.add(accessPackageDn);
+        accessPackages = DnList.of(accessPackages);
+        new ArrayList<>(accessPackages).forEach(previous -> membershipChanges.remove("fintClientAccessPackages", accessPackages, previous));
+        accessPackages = membershipChanges.add("fintClientAccessPackages", accessPackages, accessPackageDn);
     }
 
     public List<String> getAccessPackages() {
@@ -151,6 +158,11 @@ public final class Client implements BasicLdapEntry {
         return clientId;
     }
 
+    @Override
+    public MembershipChanges getMembershipChanges() {
+        return membershipChanges;
+    }
+
     public void setClientId(String clientId) {
         this.clientId = clientId;
     }
@@ -1,10 +1,12 @@
 package no.fintlabs.portal.model.client;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import no.fintlabs.portal.ldap.DnTemplate;
 import no.fintlabs.portal.model.organisation.Organisation;
 import no.fintlabs.portal.utilities.LdapConstants;
 import no.fintlabs.portal.utilities.PasswordUtility;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.ldap.support.LdapNameBuilder;
 import org.springframework.stereotype.Service;
 
 import javax.naming.Name;
@@ -12,16 +14,22 @@ import javax.naming.Name;
 @Service
 public class ClientObjectService {
 
+    private static final int ORGANISATIONS = 1000;
+
+    private DnTemplate organisations;
+    private final Cache<String, DnTemplate> clientBases = CacheBuilder.newBuilder()
+            .maximumSize(ORGANISATIONS)
+            .build();
+
     @Value("${fint.ldap.organisation-base}")
-    private String organisationBase;
+    public void setOrganisationBase(String organisationBase) {
+        organisations = DnTemplate.of(organisationBase);
+        clientBases.invalidateAll();
+    }
 
     public void setupClient(Client client, Organisation organisation) {
         client.setName(getClientFullName(client.getName(), organisation.getPrimaryAssetId()));
-        client.setDn(
-                LdapNameBuilder.newInstance(getClientBase(organisation.getName()))
-                        .add(LdapConstants.CN, client.getName())
-                        .build()
-        );
+        client.setDn(getClientBaseTemplate(organisation.getName()).name(LdapConstants.CN, client.getName()));
         client.setSecret(PasswordUtility.generateSecret());
     }
 
@@ -30,16 +38,15 @@ public class ClientObjectService {
     }
 
     public Name getClientBase(String orgUuid) {
-        return LdapNameBuilder.newInstance(organisationBase)
-                .add(LdapConstants.OU, orgUuid)
-                .add(LdapConstants.OU, LdapConstants.CLIENT_CONTAINER_NAME)
-                .build();
+        return getClientBaseTemplate(orgUuid).toName();
     }
 
     public String getClientDn(String clientUuid, String orgUuid) {
-        return LdapNameBuilder.newInstance(getClientBase(orgUuid))
-                .add(LdapConstants.CN, clientUuid)
-                .build()
-                .toString();
+        return getClientBaseTemplate(orgUuid).dn(LdapConstants.CN, clientUuid);
+    }
+
+    private DnTemplate getClientBaseTemplate(String orgUuid) {
+        return clientBases.asMap().computeIfAbsent(orgUuid, org ->
+                organisations.child(LdapConstants.OU, org).child(LdapConstants.OU, LdapConstants.CLIENT_CONTAINER_NAME));
     }
 }
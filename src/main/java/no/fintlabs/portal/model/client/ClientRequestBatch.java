@@ -0,0 +1,49 @@
+package no.fintlabs.portal.model.client;
+
+import no.fintlabs.portal.model.asset.Asset;
+import no.fintlabs.portal.model.component.Component;
+import no.fintlabs.portal.model.organisation.Organisation;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Lookups shared by the client requests handled on one listener thread within a batch, so a burst of requests for
+ * the same organisation resolves the organisation, its primary asset and the components once.
+ */
+class ClientRequestBatch {
+
+    private final long openedAt;
+    private int requests;
+
+    private final Map<String, Optional<Organisation>> organisations = new HashMap<>();
+    private final Map<String, Asset> primaryAssets = new HashMap<>();
+    private final Map<String, Optional<Component>> components = new HashMap<>();
+
+    ClientRequestBatch() {
+        openedAt = System.nanoTime();
+    }
+
+    boolean isComplete(int maxSize, Duration maxWait) {
+        return requests >= maxSize || System.nanoTime() - openedAt >= maxWait.toNanos();
+    }
+
+    void addRequest() {
+        requests++;
+    }
+
+    Optional<Organisation> getOrganisation(String orgId, Function<String, Optional<Organisation>> loader) {
+        return organisations.computeIfAbsent(orgId, loader);
+    }
+
+    Asset getPrimaryAsset(Organisation organisation, Function<Organisation, Asset> loader) {
+        return primaryAssets.computeIfAbsent(organisation.getDn(), dn -> loader.apply(organisation));
+    }
+
+    Optional<Component> getComponent(String dn, Function<String, Optional<Component>> loader) {
+        return components.computeIfAbsent(dn, loader);
+    }
+}
@@ -7,22 +7,36 @@ import no.fintlabs.kafka.requestreply.RequestConsumerFactoryService;
 import no.fintlabs.kafka.requestreply.topic.RequestTopicNameParameters;
 import no.fintlabs.kafka.requestreply.topic.RequestTopicService;
 import no.fintlabs.portal.exceptions.EntityNotFoundException;
+import no.fintlabs.portal.model.asset.AssetService;
 import no.fintlabs.portal.model.component.Component;
 import no.fintlabs.portal.model.component.ComponentService;
 import no.fintlabs.portal.model.organisation.Organisation;
 import no.fintlabs.portal.model.organisation.OrganisationService;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.KafkaAdmin;
 import org.springframework.kafka.listener.CommonLoggingErrorHandler;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.ldap.support.LdapUtils;
 
-import java.util.ArrayList;
+import javax.naming.Name;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Properties;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Configuration
@@ -33,19 +47,39 @@ public class ClientRequestReplyConsumerConfiguration {
     private final RequestConsumerFactoryService requestConsumerFactoryService;
     private final RequestTopicService requestTopicService;
     private final ComponentService componentService;
+    private final AssetService assetService;
+    private final KafkaAdmin kafkaAdmin;
+    private final Environment environment;
+
+    private final ThreadLocal<ClientRequestBatch> batches = new ThreadLocal<>();
+
+    @Value("${fint.kafka.client-request.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    @Value("${fint.kafka.client-request.batch.max-size:50}")
+    private int batchMaxSize;
+
+    @Value("${fint.kafka.client-request.batch.max-wait:500ms}")
+    private Duration batchMaxWait;
 
     public ClientRequestReplyConsumerConfiguration(
             OrganisationService organisationService,
             ClientService clientService,
             RequestConsumerFactoryService requestConsumerFactoryService,
             RequestTopicService requestTopicService,
-            ComponentService componentService
+            ComponentService componentService,
+            AssetService assetService,
+            KafkaAdmin kafkaAdmin,
+            Environment environment
     ) {
         this.organisationService = organisationService;
         this.clientService = clientService;
         this.requestConsumerFactoryService = requestConsumerFactoryService;
         this.requestTopicService = requestTopicService;
         this.componentService = componentService;
+        this.assetService = assetService;
+        this.kafkaAdmin = kafkaAdmin;
+        this.environment = environment;
     }
 
     private <V, R> ConcurrentMessageListenerContainer<String, V> initConsumer(
@@ -60,21 +94,86 @@ public class ClientRequestReplyConsumerConfiguration {
 
         requestTopicService.ensureTopic(requestTopicNameParameters, 0, TopicCleanupPolicyParameters.builder().build());
 
-        return requestConsumerFactoryService.createFactory(
+        ConcurrentMessageListenerContainer<String, V> container = requestConsumerFactoryService.createFactory(
                 (Class<V>) ClientRequest.class,
                 (Class<R>) ClientReply.class,
                 consumerRecord,
                 new CommonLoggingErrorHandler()
         ).createContainer(requestTopicNameParameters);
+
+        int partitions = getTopicProperty(topicName, "partitions", 1);
+        int concurrency = getTopicProperty(topicName, "concurrency", 1);
+
+        if (partitions > 1) {
+            kafkaAdmin.createOrModifyTopics(Arrays.stream(container.getContainerProperties().getTopics())
+                    .map(topic -> TopicBuilder.name(topic).partitions(partitions).build())
+                    .toArray(NewTopic[]::new));
+        }
+        if (concurrency > partitions) {
+            log.warn("Concurrency {} for client-{} is higher than its {} partitions, the extra consumers will be idle", concurrency, topicName, partitions);
+        }
+        container.setConcurrency(concurrency);
+
+        if (batchEnabled) {
+            Properties consumerProperties = container.getContainerProperties().getKafkaConsumerProperties();
+            consumerProperties.setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(batchMaxSize));
+            consumerProperties.setProperty(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, String.valueOf(batchMaxWait.toMillis()));
+        }
+
+        log.info("Consuming client-{} with {} partitions and concurrency {}", topicName, partitions, concurrency);
+        return container;
+    }
+
+    /**
+     * Reads {@code fint.kafka.client-request.<topic>.<property>}, falling back to
+     * {@code fint.kafka.client-request.<property>}. Producers must key requests by orgId for requests for one
+     * organisation to stay on one partition and be handled in order when the concurrency is above one.
+     */
+    private int getTopicProperty(String topicName, String property, int defaultValue) {
+        return environment.getProperty(
+                String.format("fint.kafka.client-request.%s.%s", topicName, property),
+                Integer.class,
+                environment.getProperty("fint.kafka.client-request." + property, Integer.class, defaultValue)
+        );
+    }
+
+    /**
+     * Hands each request the lookups of the batch it belongs to. With batching enabled requests share a batch until
+     * it holds {@code batch.max-size} requests or is older than {@code batch.max-wait}, otherwise every request gets
+     * its own. A failing request discards the batch so the next one starts from fresh entries, each request still
+     * gets its own reply.
+     */
+    private <R> Function<ConsumerRecord<String, ClientRequest>, ReplyProducerRecord<R>> inBatch(
+            BiFunction<ClientRequest, ClientRequestBatch, ReplyProducerRecord<R>> handler
+    ) {
+        return consumerRecord -> {
+            try {
+                return handler.apply(consumerRecord.value(), currentBatch());
+            } catch (RuntimeException e) {
+                batches.remove();
+                throw e;
+            }
+        };
+    }
+
+    private ClientRequestBatch currentBatch() {
+        ClientRequestBatch batch = batches.get();
+        if (batch == null || batch.isComplete(batchMaxSize, batchMaxWait)) {
+            batch = new ClientRequestBatch();
+            if (batchEnabled) {
+                batches.set(batch);
+            }
+        }
+        batch.addRequest();
+        return batch;
     }
 
     @Bean
     public ConcurrentMessageListenerContainer<String, ClientRequest> create() {
         return initConsumer(
                 "create",
-                consumerRecord -> {
-                    ClientRequest clientRequest = consumerRecord.value();
-                    Optional<Organisation> organisation = organisationService.getOrganisation(clientRequest.getOrgId());
+                inBatch((clientRequest, batch) -> {
+                    Optional<Organisation> organisation = batch.getOrganisation(clientRequest.getOrgId(), organisationService::getOrganisation);
 
 
                     if (organisation.isPresent()) {
@@ -83,7 +182,7 @@ public class ClientRequestReplyConsumerConfiguration {
                                 .orElseGet(() -> createNewClient(clientRequest));
 
                         if (isNewClient(client)) {
-                            if (clientService.addClient(client, organisation.get())) {
+                            if (clientService.addClient(client, organisation.get(), () -> batch.getPrimaryAsset(organisation.get(), assetService::getPrimaryAsset))) {
                                 client = clientService.getClientBySimpleName(clientRequest.getName(), organisation.get()).orElseThrow();
                                 log.info("Client " + client.getClientId() + " added successfully");
                             } else {
@@ -91,7 +190,7 @@ public class ClientRequestReplyConsumerConfiguration {
                             }
                         }
 
-                        setFieldsAndComponents(clientRequest, client);
+                        setFieldsAndComponents(clientRequest, client, batch);
                         return ReplyProducerRecord
                                 .<ClientReply>builder()
                                 .value(createReplyFromClient(client, true))
@@ -104,48 +203,69 @@ public class ClientRequestReplyConsumerConfiguration {
                                     .errorMessage("OrgId " + clientRequest.getOrgId() + " does not exist")
                                     .build())
                             .build();
-                }
+                })
         );
     }
 
-    private void setFieldsAndComponents(ClientRequest clientRequest, Client client) {
-        setFields(clientRequest, client);
-        setComponents(clientRequest, client);
+    private void setFieldsAndComponents(ClientRequest clientRequest, Client client, ClientRequestBatch batch) {
+        boolean fieldsChanged = setFields(clientRequest, client);
+        setComponents(clientRequest, client, batch);
+
+        if (fieldsChanged) {
+            clientService.updateClient(client);
+        } else {
+            clientService.updateClientMemberships(client);
+        }
     }
 
-    private void setFields(ClientRequest clientRequest, Client client) {
-        if (clientRequest.getNote() != null) {
+    private boolean setFields(ClientRequest clientRequest, Client client) {
+        boolean changed = false;
+
+        if (clientRequest.getNote() != null && !clientRequest.getNote().equals(client.getNote())) {
             client.setNote(clientRequest.getNote());
+            changed = true;
         }
 
-        if (clientRequest.getShortDescription() != null) {
+        if (clientRequest.getShortDescription() != null && !clientRequest.getShortDescription().equals(client.getShortDescription())) {
             client.setShortDescription(clientRequest.getShortDescription());
+            changed = true;
         }
-    }
 
-    private void setComponents(ClientRequest clientRequest, Client client) {
-        List<String> components = new ArrayList<>(client.getComponents());
-        components.forEach(c -> {
-            Component component = componentService.getComponentByDn(c).orElseThrow();
-            componentService.unLinkClient(component, client);
-        });
+        return changed;
+    }
 
-        clientRequest.getComponents().forEach(c -> {
-            Component component = componentService.getComponentByName(c).orElseThrow();
-            componentService.linkClient(component, client);
-        });
+    /**
+     * Links the client to the requested components and unlinks it from the others, touching only the components
+     * that change. The client itself is left for the caller to write.
+     */
+    private void setComponents(ClientRequest clientRequest, Client client, ClientRequestBatch batch) {
+        Map<Name, String> current = client.getComponents().stream()
+                .collect(Collectors.toMap(LdapUtils::newLdapName, Function.identity(), (a, b) -> a));
+        Map<Name, String> requested = clientRequest.getComponents().stream()
+                .map(componentService::getComponentDnByName)
+                .collect(Collectors.toMap(LdapUtils::newLdapName, Function.identity(), (a, b) -> a));
+
+        List<Component> unlink = current.entrySet().stream()
+                .filter(component -> !requested.containsKey(component.getKey()))
+                .map(component -> batch.getComponent(component.getValue(), componentService::getComponentByDn).orElseThrow())
+                .collect(Collectors.toList());
+        List<Component> link = requested.entrySet().stream()
+                .filter(component -> !current.containsKey(component.getKey()))
+                .map(component -> batch.getComponent(component.getValue(), componentService::getComponentByDn).orElseThrow())
+                .collect(Collectors.toList());
+
+        componentService.setClientComponents(client, unlink, link);
     }
 
     @Bean
     public ConcurrentMessageListenerContainer<String, ClientRequest> update() {
         return initConsumer(
                 "update",
-                consumerRecord -> {
-                    ClientRequest clientRequest = consumerRecord.value();
-                    Organisation organisation = organisationService.getOrganisationSync(clientRequest.getOrgId());
+                inBatch((clientRequest, batch) -> {
+                    Organisation organisation = batch.getOrganisation(clientRequest.getOrgId(), orgId -> Optional.of(organisationService.getOrganisationSync(orgId))).orElseThrow();
 
                     Client client = clientService.getClientBySimpleName(clientRequest.getName(), organisation).orElseThrow();
-                    setFieldsAndComponents(clientRequest, client);
+                    setFieldsAndComponents(clientRequest, client, batch);
                     ClientReply clientReply = createReplyFromClient(client);
 
                     return ReplyProducerRecord
@@ -153,7 +273,7 @@ public class ClientRequestReplyConsumerConfiguration {
                             .value(clientReply)
                             .build();
 
-                }
+                })
         );
     }
 
@@ -200,9 +320,8 @@ public class ClientRequestReplyConsumerConfiguration {
     public ConcurrentMessageListenerContainer<String, ClientRequest> delete() {
         return initConsumer(
                 "delete",
-                consumerRecord -> {
-                    ClientRequest clientRequest = consumerRecord.value();
-                    Organisation organisation = organisationService.getOrganisation(clientRequest.getOrgId()).orElseThrow();
+                inBatch((clientRequest, batch) -> {
+                    Organisation organisation = batch.getOrganisation(clientRequest.getOrgId(), organisationService::getOrganisation).orElseThrow();
                     Client client = clientService.getClient(clientRequest.getName(), organisation.getName()).orElseThrow(() -> new EntityNotFoundException("Client " + clientRequest.getName() + " not found"));
 
                     clientService.deleteClient(client);
@@ -212,7 +331,7 @@ public class ClientRequestReplyConsumerConfiguration {
                             .value(new ClientReply())
                             .build();
 
-                }
+                })
         );
     }
 
@@ -220,9 +339,8 @@ public class ClientRequestReplyConsumerConfiguration {
     public ConcurrentMessageListenerContainer<String, ClientRequest> get() {
         return initConsumer(
                 "get",
-                consumerRecord -> {
-                    ClientRequest clientRequest = consumerRecord.value();
-                    Organisation organisation = organisationService.getOrganisation(clientRequest.getOrgId()).orElseThrow();
+                inBatch((clientRequest, batch) -> {
+                    Organisation organisation = batch.getOrganisation(clientRequest.getOrgId(), organisationService::getOrganisation).orElseThrow();
 
                     ClientReply clientReply = clientService.getClientBySimpleName(clientRequest.getName(), organisation)
                             .map(this::createReplyFromClient)
@@ -233,7 +351,7 @@ public class ClientRequestReplyConsumerConfiguration {
                             .value(clientReply)
                             .build();
 
-                }
+                })
         );
     }
 
@@ -1,6 +1,8 @@
 package no.fintlabs.portal.model.client;
 
+import com.google.common.base.Suppliers;
 import lombok.extern.slf4j.Slf4j;
+import no.fintlabs.portal.ldap.DirectoryGraphService;
 import no.fintlabs.portal.ldap.LdapService;
 import no.fintlabs.portal.model.asset.Asset;
 import no.fintlabs.portal.model.asset.AssetService;
@@ -12,8 +14,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
@@ -31,30 +37,75 @@ public class ClientService {
     @Autowired
     private NamOAuthClientService namOAuthClientService;
 
+    @Autowired
+    private DirectoryGraphService directoryGraph;
+
     public boolean addClient(Client client, Organisation organisation) {
+        return addClient(client, organisation, () -> assetService.getPrimaryAsset(organisation));
+    }
+
+    boolean addClient(Client client, Organisation organisation, Supplier<Asset> primaryAssetSupplier) {
         clientObjectService.setupClient(client, organisation);
 
-        OAuthClient oAuthClient = namOAuthClientService.addOAuthClient(
-                String.format("c_%s", client.getName()
-                        .replace("@", "_")
-                        .replace(".", "_")
-                )
-        );
+        OAuthClient oAuthClient = namOAuthClientService.addOAuthClient(getOAuthClientName(client));
+
+        return createClient(client, oAuthClient, primaryAssetSupplier);
+    }
+
+    /**
+     * Adds the clients, registering their OAuth clients in bulk first. Clients whose registration fails, or whose OAuth client
+     * name collides with an earlier client in the batch, are left out.
+     *
+     * @return the clients that were added
+     */
+    public List<Client> addClients(List<Client> clients, Organisation organisation) {
+        clients.forEach(client -> clientObjectService.setupClient(client, organisation));
+
+        Map<String, Client> clientsByOAuthClientName = new LinkedHashMap<>();
+        clients.forEach(client -> {
+            Client existing = clientsByOAuthClientName.putIfAbsent(getOAuthClientName(client), client);
+            if (existing != null) {
+                log.error("Client {} was not added: OAuth client name {} is already used by client {}",
+                        client.getName(), getOAuthClientName(client), existing.getName());
+            }
+        });
+        Supplier<Asset> primaryAsset = Suppliers.memoize(() -> assetService.getPrimaryAsset(organisation));
+
+        List<Client> added = new ArrayList<>();
+        namOAuthClientService.addOAuthClients(new ArrayList<>(clientsByOAuthClientName.keySet())).forEach(registration -> {
+            Client client = clientsByOAuthClientName.get(registration.getName());
+            if (!registration.isSuccessful()) {
+                log.error("Client {} was not added: {}", client.getName(), registration.getErrorMessage());
+            } else if (createClient(client, registration.getClient(), primaryAsset)) {
+                added.add(client);
+            }
+        });
+        return added;
+    }
 
+    private boolean createClient(Client client, OAuthClient oAuthClient, Supplier<Asset> primaryAssetSupplier) {
         client.setClientId(oAuthClient.getClientId());
 
         boolean created = ldapService.createEntry(client);
         if (created) {
-            Asset primaryAsset = assetService.getPrimaryAsset(organisation);
-            assetService.linkClientToAsset(primaryAsset, client);
+            assetService.linkClientToAsset(primaryAssetSupplier.get(), client);
         }
 
         return created;
     }
 
-    public List<Client> getClients(String orgName) {
+    private String getOAuthClientName(Client client) {
+        return String.format("c_%s", client.getName()
+                .replace("@", "_")
+                .replace(".", "_")
+        );
+    }
 
-        return ldapService.getAll(clientObjectService.getClientBase(orgName).toString(), Client.class);
+    public List<Client> getClients(String orgName) {
+        String base = clientObjectService.getClientBase(orgName).toString();
+        return directoryGraph.current(base)
+                .map(graph -> graph.getAll(base, Client.class))
+                .orElseGet(() -> ldapService.getAll(base, Client.class));
     }
 
     public String getClientSecret(Client client) {
@@ -76,6 +127,10 @@ public class ClientService {
         return ldapService.updateEntry(client);
     }
 
+    public boolean updateClientMemberships(Client client) {
+        return ldapService.updateMemberships(client);
+    }
+
     public void deleteClient(Client client) {
         if (StringUtils.hasText(client.getClientId())) {
             namOAuthClientService.removeOAuthClient(client.getClientId());
@@ -87,6 +142,4 @@ public class ClientService {
         client.setSecret(newPassword);
         ldapService.updateEntry(client);
     }
-
-
 }
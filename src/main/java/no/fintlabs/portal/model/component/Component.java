@@ -1,22 +1,27 @@
 package no.fintlabs.portal.model.component;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 import lombok.Data;
-import no.fintlabs.portal.ldap.BasicLdapEntry;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import no.fintlabs.portal.ldap.DnList;
+import no.fintlabs.portal.ldap.MembershipChanges;
+import no.fintlabs.portal.ldap.MembershipTrackingEntry;
 import org.springframework.ldap.odm.annotations.Attribute;
 import org.springframework.ldap.odm.annotations.Entry;
 import org.springframework.ldap.odm.annotations.Id;
+import org.springframework.ldap.odm.annotations.Transient;
 import org.springframework.ldap.support.LdapNameBuilder;
 
 import javax.naming.Name;
-import java.util.ArrayList;
 import java.util.List;
 
 @ApiModel
 @Data
 @Entry(objectClasses = {"organizationalUnit", "top", "fintComponent"})
-public final class Component implements BasicLdapEntry {
+public final class Component implements MembershipTrackingEntry {
 
     @Id
     private Name dn;
@@ -72,12 +77,18 @@ public final class Component implements BasicLdapEntry {
     @Attribute(name = "fintComponentCacheDisabledFor")
     private List<String> cacheDisabledFor;
 
+    @JsonIgnore
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final MembershipChanges membershipChanges = new MembershipChanges();
+
     public Component() {
 
-        organisations = new ArrayList<>();
-        clients = new ArrayList<>();
-        adapters = new ArrayList<>();
-        cacheDisabledFor = new ArrayList<>();
+        organisations = new DnList();
+        clients = new DnList();
+        adapters = new DnList();
+        cacheDisabledFor = new DnList();
     }
 
     public List<String> getOrganisations() {
@@ -93,33 +104,27 @@ public final class Component implements BasicLdapEntry {
     }
 
     public void addOrganisation(String organisationDn) {
-        if (organisations.stream().noneMatch(organisationDn::equalsIgnoreCase)) {
-            organisations.add(organisationDn);
-        }
+        organisations = membershipChanges.add("fintComponentOrganisations", organisations, organisationDn);
     }
 
     public void removeOrganisation(String organisationDn) {
-        organisations.removeIf(component -> component.equalsIgnoreCase(organisationDn));
+        organisations = membershipChanges.remove("fintComponentOrganisations", organisations, organisationDn);
     }
 
     public void addClient(String clientDn) {
-        if (clients.stream().noneMatch(clientDn::equalsIgnoreCase)) {
-            clients.add(clientDn);
-        }
+        clients = membershipChanges.add("fintComponentClients", clients, clientDn);
     }
 
     public void removeClient(String clientDn) {
-        clients.removeIf(client -> client.equalsIgnoreCase(clientDn));
+        clients = membershipChanges.remove("fintComponentClients", clients, clientDn);
     }
 
     public void addAdapter(String adapterDn) {
-        if (adapters.stream().noneMatch(adapterDn::equalsIgnoreCase)) {
-            adapters.add(adapterDn);
-        }
+        adapters = membershipChanges.add("fintComponentAdapters", adapters, adapterDn);
     }
 
     public void removeAdapter(String adapterDn) {
-        adapters.removeIf(adapter -> adapter.equalsIgnoreCase(adapterDn));
+        adapters = membershipChanges.remove("fintComponentAdapters", adapters, adapterDn);
     }
 
     public List<String> getCacheDisabledFor() {
@@ -127,9 +132,7 @@ public final class Component implements BasicLdapEntry {
     }
 
     public void setCacheDisabledFor(String entity) {
-        if (cacheDisabledFor.stream().noneMatch(entity::equalsIgnoreCase)) {
-            cacheDisabledFor.add(entity);
-        }
+        cacheDisabledFor = membershipChanges.add("fintComponentCacheDisabledFor", cacheDisabledFor, entity);
     }
 
     @Override
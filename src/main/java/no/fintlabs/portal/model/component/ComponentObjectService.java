@@ -1,6 +1,7 @@
 package no.fintlabs.portal.model.component;
 
 import lombok.Getter;
+import no.fintlabs.portal.ldap.DnTemplate;
 import no.fintlabs.portal.ldap.LdapService;
 import no.fintlabs.portal.utilities.LdapConstants;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,16 +18,21 @@ public class ComponentObjectService {
     private LdapService ldapService;
     
     @Getter
-    @Value("${fint.ldap.component-base}")
     private String componentBase;
 
+    private DnTemplate components;
+
+    @Value("${fint.ldap.component-base}")
+    public void setComponentBase(String componentBase) {
+        this.componentBase = componentBase;
+        components = DnTemplate.of(componentBase);
+    }
+
     public void setupComponent(Component component) {
         Component componentFromLdap = ldapService.getEntryByUniqueName(component.getName(), componentBase, Component.class);
 
         if (componentFromLdap == null) {
-            Name dn = LdapNameBuilder.newInstance(componentBase)
-                    .add(LdapConstants.OU, component.getName())
-                    .build();
+            Name dn = components.name(LdapConstants.OU, component.getName());
             component.setDn(dn);
         } else {
             component.setDn(LdapNameBuilder.newInstance(componentFromLdap.getDn()).build());
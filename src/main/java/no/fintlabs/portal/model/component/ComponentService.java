@@ -3,6 +3,10 @@ package no.fintlabs.portal.model.component;
 import lombok.extern.slf4j.Slf4j;
 import no.fintlabs.portal.exceptions.EntityNotFoundException;
 import no.fintlabs.portal.exceptions.InvalidResourceException;
+import no.fintlabs.portal.ldap.DirectoryGraph;
+import no.fintlabs.portal.ldap.DirectoryGraphService;
+import no.fintlabs.portal.ldap.DnList;
+import no.fintlabs.portal.ldap.DnTemplate;
 import no.fintlabs.portal.ldap.LdapService;
 import no.fintlabs.portal.model.adapter.Adapter;
 import no.fintlabs.portal.model.asset.Asset;
@@ -12,8 +16,8 @@ import no.fintlabs.portal.model.organisation.OrganisationService;
 import no.fintlabs.portal.utilities.LdapConstants;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.ldap.support.LdapNameBuilder;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 
 import javax.annotation.PostConstruct;
 import java.util.List;
@@ -36,9 +40,19 @@ public class ComponentService {
     @Autowired
     private AssetService assetService;
 
-    @Value("${fint.ldap.component-base}")
+    @Autowired
+    private DirectoryGraphService directoryGraph;
+
     private String componentBase;
 
+    private DnTemplate components;
+
+    @Value("${fint.ldap.component-base}")
+    public void setComponentBase(String componentBase) {
+        this.componentBase = componentBase;
+        components = DnTemplate.of(componentBase);
+    }
+
 
     @PostConstruct
     public void init() {
@@ -83,9 +97,7 @@ public class ComponentService {
 
     public String getComponentDnByName(String name) {
         if (name != null) {
-            return LdapNameBuilder.newInstance(componentBase)
-                    .add(LdapConstants.OU, name)
-                    .build().toString();
+            return components.dn(LdapConstants.OU, name);
         }
         return null;
     }
@@ -94,8 +106,25 @@ public class ComponentService {
 
         component.addClient(client.getDn());
         client.addComponent(component.getDn());
-        ldapService.updateEntry(client);
-        ldapService.updateEntry(component);
+        ldapService.updateMemberships(client);
+        ldapService.updateMemberships(component);
+    }
+
+    /**
+     * Unlinks the client from and links it to the given components, writing only the components. The changes to the
+     * client are recorded on it for the caller to write once.
+     */
+    public void setClientComponents(Client client, List<Component> unlink, List<Component> link) {
+        unlink.forEach(component -> {
+            component.removeClient(client.getDn());
+            client.removeComponent(component.getDn());
+            ldapService.updateMemberships(component);
+        });
+        link.forEach(component -> {
+            component.addClient(client.getDn());
+            client.addComponent(component.getDn());
+            ldapService.updateMemberships(component);
+        });
     }
 
     public void unLinkClient(Component component, Client client) {
@@ -103,8 +132,8 @@ public class ComponentService {
         component.removeClient(client.getDn());
         client.removeComponent(component.getDn());
 
-        ldapService.updateEntry(client);
-        ldapService.updateEntry(component);
+        ldapService.updateMemberships(client);
+        ldapService.updateMemberships(component);
     }
 
     public void linkAdapter(Component component, Adapter adapter) {
@@ -112,8 +141,8 @@ public class ComponentService {
         component.addAdapter(adapter.getDn());
         adapter.addComponent(component.getDn());
 
-        ldapService.updateEntry(adapter);
-        ldapService.updateEntry(component);
+        ldapService.updateMemberships(adapter);
+        ldapService.updateMemberships(component);
     }
 
     public void unLinkAdapter(Component component, Adapter adapter) {
@@ -121,19 +150,55 @@ public class ComponentService {
         component.removeAdapter(adapter.getDn());
         adapter.removeComponent(component.getDn());
 
-        ldapService.updateEntry(adapter);
-        ldapService.updateEntry(component);
+        ldapService.updateMemberships(adapter);
+        ldapService.updateMemberships(component);
     }
 
-    public List<Asset> getActiveAssetsForComponent(Component component) {
-        return component
-                .getOrganisations()
-                .stream()
-                .map(organisationService::getOrganisationByDn)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .map(assetService::getAssets)
-                .flatMap(List::stream)
+    /**
+     * Unlinks the clients and adapters that reference the component, writing each of them once. The changes to the
+     * component are recorded on it for the caller to write once.
+     *
+     * @return the number of clients and adapters unlinked
+     */
+    public int unLinkClientsAndAdapters(Component component, List<Client> clients, List<Adapter> adapters) {
+        List<Client> linkedClients = clients.stream()
+                .filter(client -> DnList.of(client.getComponents()).contains(component.getDn()))
                 .collect(Collectors.toList());
+        List<Adapter> linkedAdapters = adapters.stream()
+                .filter(adapter -> DnList.of(adapter.getComponents()).contains(component.getDn()))
+                .collect(Collectors.toList());
+
+        linkedClients.forEach(client -> {
+            component.removeClient(client.getDn());
+            client.removeComponent(component.getDn());
+            ldapService.updateMemberships(client);
+        });
+        linkedAdapters.forEach(adapter -> {
+            component.removeAdapter(adapter.getDn());
+            adapter.removeComponent(component.getDn());
+            ldapService.updateMemberships(adapter);
+        });
+
+        return linkedClients.size() + linkedAdapters.size();
+    }
+
+    public List<Asset> getActiveAssetsForComponent(Component component) {
+        return streamActiveAssetsForComponent(component).collectList().block();
+    }
+
+    /**
+     * Streams the assets of the organisations the component is linked to, found by the organisation they belong to.
+     */
+    public Flux<Asset> streamActiveAssetsForComponent(Component component) {
+        List<String> organisations = component.getOrganisations();
+        if (organisations == null || organisations.isEmpty()) {
+            return Flux.empty();
+        }
+        Optional<DirectoryGraph> graph = directoryGraph.current(organisations.toArray(new String[0]));
+        if (graph.isPresent()) {
+            return Flux.fromIterable(organisations)
+                    .flatMapIterable(organisation -> graph.get().getBacklinks(organisation, "fintAssetOrganisation", Asset.class));
+        }
+        return assetService.streamAssets(organisations);
     }
 }
@@ -1,22 +1,27 @@
 package no.fintlabs.portal.model.contact;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 import lombok.Data;
-import no.fintlabs.portal.ldap.BasicLdapEntry;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import no.fintlabs.portal.ldap.DnList;
+import no.fintlabs.portal.ldap.MembershipChanges;
+import no.fintlabs.portal.ldap.MembershipTrackingEntry;
 import org.springframework.ldap.odm.annotations.Attribute;
 import org.springframework.ldap.odm.annotations.Entry;
 import org.springframework.ldap.odm.annotations.Id;
+import org.springframework.ldap.odm.annotations.Transient;
 import org.springframework.ldap.support.LdapNameBuilder;
 
 import javax.naming.Name;
-import java.util.ArrayList;
 import java.util.List;
 
 @ApiModel
 @Data
 @Entry(objectClasses = {"inetOrgPerson", "organizationalPerson", "person", "top", "fintContact"})
-public final class Contact implements BasicLdapEntry {
+public final class Contact implements MembershipTrackingEntry {
 
     @ApiModelProperty(value = "DN of the contact. This is automatically set.")
     @Id
@@ -58,10 +63,16 @@ public final class Contact implements BasicLdapEntry {
     @Attribute(name = "fintContactRoles")
     private List<String> roles;
 
+    @JsonIgnore
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final MembershipChanges membershipChanges = new MembershipChanges();
+
     public Contact() {
-        technical = new ArrayList<>();
-        legal = new ArrayList<>();
-        roles = new ArrayList<>();
+        technical = new DnList();
+        legal = new DnList();
+        roles = new DnList();
     }
 
     public String getDn() {
@@ -83,32 +94,26 @@ public final class Contact implements BasicLdapEntry {
     }
 
     public void addOrganisationTechnicalContact(String organisationDn) {
-        if (technical.stream().noneMatch(organisationDn::equalsIgnoreCase)) {
-            technical.add(organisationDn);
-        }
+        technical = membershipChanges.add("fintContactTechnical", technical, organisationDn);
     }
 
     public void removeOrganisationTechnicalContact(String organisationDn) {
-        technical.removeIf(organisationDn::equalsIgnoreCase);
+        technical = membershipChanges.remove("fintContactTechnical", technical, organisationDn);
     }
 
     public void addOrganisationLegalContact(String organisationDn) {
-        if (legal.stream().noneMatch(organisationDn::equalsIgnoreCase)) {
-            legal.add(organisationDn);
-        }
+        legal = membershipChanges.add("fintContactLegal", legal, organisationDn);
     }
 
     public void removeOrganisationLegalContact(String organisationDn) {
-        legal.removeIf(organisationDn::equalsIgnoreCase);
+        legal = membershipChanges.remove("fintContactLegal", legal, organisationDn);
     }
 
     public void addRole(String role) {
-        if (roles.stream().noneMatch(role::equalsIgnoreCase)) {
-            roles.add(role);
-        }
+        roles = membershipChanges.add("fintContactRoles", roles, role);
     }
 
     public void removeRole(String role) {
-        roles.removeIf(role::equalsIgnoreCase);
+        roles = membershipChanges.remove("fintContactRoles", roles, role);
     }
 }
@@ -1,8 +1,8 @@
 package no.fintlabs.portal.model.contact;
 
+import no.fintlabs.portal.ldap.DnTemplate;
 import no.fintlabs.portal.utilities.LdapConstants;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.ldap.support.LdapNameBuilder;
 import org.springframework.stereotype.Service;
 
 import javax.naming.Name;
@@ -11,22 +11,23 @@ import javax.naming.Name;
 @Service
 public class ContactObjectService {
 
+    private DnTemplate contactBase;
+
     @Value("${fint.ldap.contact-base}")
-    private String contactBase;
+    public void setContactBase(String contactBase) {
+        this.contactBase = DnTemplate.of(contactBase);
+    }
 
     public void setupContact(Contact contact) {
         contact.setDn(getContactDn(contact.getNin()));
     }
 
     public Name getContactBase() {
-        return LdapNameBuilder.newInstance(contactBase)
-                .build();
+        return contactBase.toName();
     }
 
     public String getContactDn(String nin) {
-        return LdapNameBuilder.newInstance(getContactBase())
-                .add(LdapConstants.CN, nin)
-                .build().toString();
+        return contactBase.dn(LdapConstants.CN, nin);
     }
 
 }
@@ -3,7 +3,10 @@ package no.fintlabs.portal.model.contact;
 import lombok.extern.slf4j.Slf4j;
 import no.fintlabs.portal.ldap.LdapService;
 import org.springframework.stereotype.Service;
+import org.springframework.ldap.filter.EqualsFilter;
+import reactor.core.publisher.Flux;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,8 +24,28 @@ public class ContactService {
         this.contactObjectService = contactObjectService;
     }
 
-    public List<Contact> getContacts() {
-        return ldapService.getAll(contactObjectService.getContactBase().toString(), Contact.class);
+    /**
+     * Streams all contacts, reading them from the directory one page at a time.
+     */
+    public Flux<Contact> streamContacts() {
+        return ldapService.getAllPaged(contactObjectService.getContactBase().toString(), Contact.class);
+    }
+
+    public List<Contact> getTechnicalContacts(String organisationDn) {
+        return getContactsLinkedTo("fintContactTechnical", organisationDn);
+    }
+
+    public List<Contact> getLegalContacts(String organisationDn) {
+        return getContactsLinkedTo("fintContactLegal", organisationDn);
+    }
+
+    private List<Contact> getContactsLinkedTo(String attribute, String organisationDn) {
+        List<Contact> contacts = ldapService.getAll(
+                contactObjectService.getContactBase().toString(),
+                Contact.class,
+                new EqualsFilter(attribute, organisationDn)
+        );
+        return contacts == null ? Collections.emptyList() : contacts;
     }
 
     public boolean addContact(Contact contact) {
@@ -1,9 +1,14 @@
 package no.fintlabs.portal.model.organisation;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 import lombok.Data;
-import no.fintlabs.portal.ldap.BasicLdapEntry;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import no.fintlabs.portal.ldap.DnList;
+import no.fintlabs.portal.ldap.MembershipChanges;
+import no.fintlabs.portal.ldap.MembershipTrackingEntry;
 import org.springframework.ldap.odm.annotations.Attribute;
 import org.springframework.ldap.odm.annotations.Entry;
 import org.springframework.ldap.odm.annotations.Id;
@@ -11,7 +16,6 @@ import org.springframework.ldap.odm.annotations.Transient;
 import org.springframework.ldap.support.LdapNameBuilder;
 
 import javax.naming.Name;
-import java.util.ArrayList;
 import java.util.List;
 
 
@@ -19,7 +23,7 @@ import java.util.List;
 @ApiModel
 @Data
 @Entry(objectClasses = {"organizationalUnit", "top", "fintOrganisation"})
-public final class Organisation implements BasicLdapEntry {
+public final class Organisation implements MembershipTrackingEntry {
 
     @Id
     private Name dn;
@@ -58,32 +62,38 @@ public final class Organisation implements BasicLdapEntry {
     @Attribute(name = "fintOrganisationCustomer")
     private boolean customer;
 
-    @Transient
+    @Attribute(name = "fintOrganisationPrimaryAssetId")
     private String primaryAssetId;
 
+    @ApiModelProperty(value = "DN of the primary asset of the organisation. This is automatically set.")
+    @Attribute(name = "fintOrganisationPrimaryAsset")
+    private String primaryAsset;
+
+    @JsonIgnore
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final MembershipChanges membershipChanges = new MembershipChanges();
+
     public Organisation() {
-        components = new ArrayList<>();
-        techicalContacts = new ArrayList<>();
+        components = new DnList();
+        techicalContacts = new DnList();
     }
 
     public void addComponent(String componentDn) {
-        if (!components.stream().anyMatch(componentDn::equalsIgnoreCase)) {
-            components.add(componentDn);
-        }
+        components = membershipChanges.add("fintOrganisationComponents", components, componentDn);
     }
 
     public void removeComponent(String componentDn) {
-        components.removeIf(componentDn::equalsIgnoreCase);
+        components = membershipChanges.remove("fintOrganisationComponents", components, componentDn);
     }
 
     public void addTechnicalContact(String contactDn) {
-        if (!techicalContacts.stream().anyMatch(contactDn::equalsIgnoreCase)) {
-            techicalContacts.add(contactDn);
-        }
+        techicalContacts = membershipChanges.add("fintOrganisationTechnical", techicalContacts, contactDn);
     }
 
     public void removeTechicalContact(String contactDn) {
-        techicalContacts.removeIf(contactDn::equalsIgnoreCase);
+        techicalContacts = membershipChanges.remove("fintOrganisationTechnical", techicalContacts, contactDn);
     }
 
     public void setName(String name) {
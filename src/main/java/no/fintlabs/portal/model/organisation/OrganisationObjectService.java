@@ -1,6 +1,7 @@
 package no.fintlabs.portal.model.organisation;
 
 import lombok.Getter;
+import no.fintlabs.portal.ldap.DnTemplate;
 import no.fintlabs.portal.ldap.LdapService;
 import no.fintlabs.portal.utilities.LdapConstants;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,17 +18,22 @@ public class OrganisationObjectService {
     LdapService ldapService;
 
     @Getter
-    @Value("${fint.ldap.organisation-base}")
     private String organisationBase;
 
+    private DnTemplate organisations;
+
+    @Value("${fint.ldap.organisation-base}")
+    public void setOrganisationBase(String organisationBase) {
+        this.organisationBase = organisationBase;
+        organisations = DnTemplate.of(organisationBase);
+    }
+
     public void setupOrganisation(Organisation organisation) {
         Organisation organisationFromLdap = ldapService.getEntryByUniqueName(organisation.getName(), organisationBase, Organisation.class);
 
         if (organisationFromLdap == null) {
             String name = organisation.getName().replace(".", "_");
-            Name dn = LdapNameBuilder.newInstance(organisationBase)
-                    .add(LdapConstants.OU, name)
-                    .build();
+            Name dn = organisations.name(LdapConstants.OU, name);
             organisation.setDn(dn);
             organisation.setName(name);
         } else {
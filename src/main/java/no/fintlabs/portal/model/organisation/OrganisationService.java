@@ -1,12 +1,15 @@
 package no.fintlabs.portal.model.organisation;
 
+import com.google.common.base.Suppliers;
 import lombok.Synchronized;
 import lombok.extern.slf4j.Slf4j;
 import no.fintlabs.portal.exceptions.EntityNotFoundException;
 import no.fintlabs.portal.exceptions.InvalidResourceException;
 import no.fintlabs.portal.exceptions.UpdateEntityException;
 import no.fintlabs.portal.ldap.Container;
+import no.fintlabs.portal.ldap.DnTemplate;
 import no.fintlabs.portal.ldap.LdapService;
+import no.fintlabs.portal.ldap.ReactiveLdapService;
 import no.fintlabs.portal.model.adapter.Adapter;
 import no.fintlabs.portal.model.adapter.AdapterService;
 import no.fintlabs.portal.model.asset.Asset;
@@ -18,17 +21,25 @@ import no.fintlabs.portal.model.component.ComponentObjectService;
 import no.fintlabs.portal.model.component.ComponentService;
 import no.fintlabs.portal.model.contact.Contact;
 import no.fintlabs.portal.model.contact.ContactService;
+import no.fintlabs.portal.oauth.NamOAuthClientService;
+import no.fintlabs.portal.oauth.OAuthClientRemoval;
 import no.fintlabs.portal.utilities.LdapConstants;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.ldap.support.LdapNameBuilder;
+import org.springframework.ldap.support.LdapUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import javax.naming.Name;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static no.fintlabs.portal.model.contact.ContactService.ADMIN_ROLE_NAME;
 
@@ -43,6 +54,9 @@ public class OrganisationService {
     @Autowired
     private LdapService ldapService;
 
+    @Autowired
+    private ReactiveLdapService reactiveLdapService;
+
     @Autowired
     private ContactService contactService;
 
@@ -52,14 +66,24 @@ public class OrganisationService {
     @Autowired
     private ClientService clientService;
 
+    @Autowired
+    private NamOAuthClientService namOAuthClientService;
+
     private ComponentService componentService;
 
     @Autowired
     private AssetService assetService;
 
-    @Value("${fint.ldap.organisation-base}")
     private String organisationBase;
 
+    private DnTemplate organisations;
+
+    @Value("${fint.ldap.organisation-base}")
+    public void setOrganisationBase(String organisationBase) {
+        this.organisationBase = organisationBase;
+        organisations = DnTemplate.of(organisationBase);
+    }
+
     public void setComponentService(ComponentService componentService) {
         this.componentService = componentService;
     }
@@ -73,9 +97,10 @@ public class OrganisationService {
 
         boolean createdOrganisation = ldapService.createEntry(organisation);
 
-        createClientContainer(organisation.getDn());
-        createAdapterContainer(organisation.getDn());
-        createAssetContainer(organisation.getDn());
+        DnTemplate organisationDn = DnTemplate.of(organisation.getDn());
+        createClientContainer(organisationDn);
+        createAdapterContainer(organisationDn);
+        createAssetContainer(organisationDn);
         createPrimaryAsset(organisation);
 
         return createdOrganisation;
@@ -85,35 +110,81 @@ public class OrganisationService {
         return ldapService.updateEntry(organisation);
     }
 
-    public List<Organisation> getOrganisations() {
-
-        List<Organisation> organisations = ldapService.getAll(organisationBase, Organisation.class);
-
-        organisations.forEach(organisation -> {
-            organisation.setPrimaryAssetId(assetService.getPrimaryAsset(organisation).getAssetId());
+    /**
+     * Streams all organisations, reading them from the directory one page at a time.
+     */
+    public Flux<Organisation> streamOrganisations() {
+        return Flux.defer(() -> {
+            Supplier<Map<Name, Asset>> primaryAssets = Suppliers.memoize(() -> assetService.getPrimaryAssetsByOrganisation(organisationBase));
+            return ldapService.getAllPaged(organisationBase, Organisation.class)
+                    .doOnNext(organisation -> {
+                        if (!StringUtils.hasText(organisation.getPrimaryAssetId())) {
+                            Asset primaryAsset = primaryAssets.get().get(LdapUtils.newLdapName(organisation.getDn()));
+                            organisation.setPrimaryAssetId(primaryAsset == null ? null : primaryAsset.getAssetId());
+                        }
+                    });
         });
-        return organisations;
     }
 
     public Optional<Organisation> getOrganisation(String name) {
 
         Optional<Organisation> oranisation = Optional.ofNullable(ldapService.getEntry(
-                LdapNameBuilder.newInstance(organisationBase)
-                        .add(LdapConstants.OU, name)
-                        .build()
-                        .toString(),
+                organisations.dn(LdapConstants.OU, name),
                 Organisation.class
                 )
         );
 
-        if (oranisation.isPresent()) {
-            oranisation.get().setPrimaryAssetId(assetService.getPrimaryAsset(oranisation.get()).getAssetId());
-        }
+        oranisation.ifPresent(this::resolvePrimaryAssetIfMissing);
 
         return oranisation;
 
     }
 
+    /**
+     * Non-blocking {@link #getOrganisation(String)}.
+     */
+    public Mono<Organisation> findOrganisation(String name) {
+        return reactiveLdapService.getEntry(organisations.dn(LdapConstants.OU, name), Organisation.class)
+                .flatMap(organisation -> StringUtils.hasText(organisation.getPrimaryAssetId())
+                        ? Mono.just(organisation)
+                        : reactiveLdapService.execute(() -> {
+                            resolvePrimaryAssetIfMissing(organisation);
+                            return organisation;
+                        }));
+    }
+
+    /**
+     * Stores the primary asset on organisations created before it was kept on the organisation entry.
+     *
+     * @return the number of organisations updated
+     */
+    public long backfillPrimaryAssets() {
+        return ldapService.getAllPaged(organisationBase, Organisation.class)
+                .filter(organisation -> !StringUtils.hasText(organisation.getPrimaryAsset()))
+                .filter(organisation -> {
+                    Asset primaryAsset = assetService.getPrimaryAsset(organisation);
+                    if (primaryAsset.getDn() == null) {
+                        log.warn("Organisation {} has no primary asset", organisation.getDn());
+                        return false;
+                    }
+                    setPrimaryAsset(organisation, primaryAsset);
+                    return ldapService.updateEntry(organisation);
+                })
+                .count()
+                .block();
+    }
+
+    private void resolvePrimaryAssetIfMissing(Organisation organisation) {
+        if (!StringUtils.hasText(organisation.getPrimaryAssetId())) {
+            organisation.setPrimaryAssetId(assetService.getPrimaryAsset(organisation).getAssetId());
+        }
+    }
+
+    private void setPrimaryAsset(Organisation organisation, Asset asset) {
+        organisation.setPrimaryAssetId(asset.getAssetId());
+        organisation.setPrimaryAsset(asset.getDn());
+    }
+
     @Synchronized
     public Organisation getOrganisationSync(String orgName) {
         Organisation organisation = getOrganisation(orgName)
@@ -128,58 +199,33 @@ public class OrganisationService {
         return Optional.ofNullable(ldapService.getEntry(dn, Organisation.class));
     }
 
+    /**
+     * Removes the OAuth clients of the organisation's adapters and clients from NAM, concurrently, and then the
+     * organisation's subtree from the directory. If any OAuth client can not be removed the organisation is kept,
+     * so the deletion can be repeated.
+     */
     public void deleteOrganisation(Organisation organisation) {
-
-        // Remove all adapters
         List<Adapter> adapters = adapterService.getAdapters(organisation.getName());
-
-        if (adapters != null) {
-            adapters.forEach(adapter -> adapterService.deleteAdapter(adapter));
-        }
-        // Remove all clients
         List<Client> clients = clientService.getClients(organisation.getName());
 
-        if (clients != null) {
-            clients.forEach(client -> clientService.deleteClient(client));
+        List<String> clientIds = Stream.concat(
+                        adapters == null ? Stream.empty() : adapters.stream().map(Adapter::getClientId),
+                        clients == null ? Stream.empty() : clients.stream().map(Client::getClientId))
+                .filter(StringUtils::hasText)
+                .collect(Collectors.toList());
+        log.info("Deleting organisation {}, removing {} OAuth clients", organisation.getName(), clientIds.size());
+
+        List<OAuthClientRemoval> failed = namOAuthClientService.removeOAuthClients(clientIds).stream()
+                .filter(removal -> !removal.isSuccessful())
+                .collect(Collectors.toList());
+        if (!failed.isEmpty()) {
+            throw new UpdateEntityException(String.format("Unable to remove %d of %d OAuth clients of %s: %s",
+                    failed.size(), clientIds.size(), organisation.getName(),
+                    failed.stream().map(OAuthClientRemoval::getClientId).collect(Collectors.joining(", "))));
         }
-        // Remove all assets
-        List<Asset> assets = assetService.getAssets(organisation);
 
-        if (assets != null) {
-            assets.forEach(assetService::removeAsset);
-        }
-
-        // Remove adapter container
-        Container adapterContainer = new Container();
-
-        adapterContainer.setOu(LdapConstants.ADAPTER_CONTAINER_NAME);
-        adapterContainer.setDn(LdapNameBuilder.newInstance(organisation.getDn())
-                .add(LdapConstants.OU, LdapConstants.ADAPTER_CONTAINER_NAME)
-                .build());
-        ldapService.deleteEntry(adapterContainer);
-
-        // remove client container
-        Container clientContainer = new Container();
-
-        clientContainer.setOu(LdapConstants.CLIENT_CONTAINER_NAME);
-        clientContainer.setDn(LdapNameBuilder.newInstance(organisation.getDn())
-                .add(LdapConstants.OU, LdapConstants.CLIENT_CONTAINER_NAME)
-                .build());
-
-
-        ldapService.deleteEntry(clientContainer);
-
-        // remove asset container
-        Container assetContainer = new Container();
-
-        assetContainer.setOu(LdapConstants.ASSET_CONTAINER_NAME);
-        assetContainer.setDn(LdapNameBuilder.newInstance(organisation.getDn())
-                .add(LdapConstants.OU, LdapConstants.ASSET_CONTAINER_NAME)
-                .build());
-
-
-        ldapService.deleteEntry(assetContainer);
-        ldapService.deleteEntry(organisation);
+        ldapService.deleteSubtree(organisation.getDn());
+        log.info("Deleted organisation {}", organisation.getName());
     }
 
     public void linkLegalContact(Organisation organisation, Contact contact) {
@@ -203,7 +249,7 @@ public class OrganisationService {
         organisation.setLegalContact(null);
         contact.removeOrganisationLegalContact(organisation.getDn());
 
-        ldapService.updateEntry(contact);
+        ldapService.updateMemberships(contact);
         ldapService.updateEntry(organisation);
     }
 
@@ -211,61 +257,52 @@ public class OrganisationService {
         organisation.addTechnicalContact(contact.getDn());
         contact.addOrganisationTechnicalContact(organisation.getDn());
 
-        ldapService.updateEntry(contact);
-        ldapService.updateEntry(organisation);
+        ldapService.updateMemberships(contact);
+        ldapService.updateMemberships(organisation);
     }
 
     public void unLinkTechnicalContact(Organisation organisation, Contact contact) {
         organisation.removeTechicalContact(contact.getDn());
         contact.removeOrganisationTechnicalContact(organisation.getDn());
 
-        ldapService.updateEntry(contact);
-        ldapService.updateEntry(organisation);
+        ldapService.updateMemberships(contact);
+        ldapService.updateMemberships(organisation);
     }
 
     public void linkComponent(Organisation organisation, Component component) {
         organisation.addComponent(component.getDn());
         component.addOrganisation(organisation.getDn());
 
-        ldapService.updateEntry(organisation);
-        ldapService.updateEntry(component);
+        ldapService.updateMemberships(organisation);
+        ldapService.updateMemberships(component);
     }
 
+    /**
+     * Unlinks the component from the organisation and from the organisation's clients and adapters that use it.
+     * Each affected client and adapter is written once, and all the changes to the component in one modify.
+     */
     public void unLinkComponent(Organisation organisation, Component component) {
-        // TODO: Add tests for this.
         List<Client> clients = clientService.getClients(organisation.getName());
         List<Adapter> adapters = adapterService.getAdapters(organisation.getName());
 
-        clients.forEach(client -> componentService.unLinkClient(component, client));
-        adapters.forEach(adapter -> componentService.unLinkAdapter(component, adapter));
+        int unlinked = componentService.unLinkClientsAndAdapters(component, clients, adapters);
 
         organisation.removeComponent(component.getDn());
         component.removeOrganisation(organisation.getDn());
 
-
-        ldapService.updateEntry(organisation);
-        ldapService.updateEntry(component);
+        ldapService.updateMemberships(organisation);
+        ldapService.updateMemberships(component);
+        log.info("Unlinked {} from {} and {} of its clients and adapters", component.getName(), organisation.getName(), unlinked);
     }
 
     public List<Contact> getTechnicalContacts(Organisation organisation) {
-        List<Contact> contacts = contactService.getContacts();
-
-
-        return contacts.stream().filter(contact ->
-                organisation.getTechicalContacts().contains(contact.getDn())
-        ).collect(Collectors.toList());
-
+        return contactService.getTechnicalContacts(organisation.getDn());
     }
 
     public Contact getLegalContact(Organisation organisation) {
         if (organisation.getLegalContact() == null) return null;
 
-        return contactService.getContacts()
-                .stream()
-                .filter(
-                        contact -> contact.getDn().equals(organisation.getLegalContact())
-                ).findAny()
-                .orElse(null);
+        return contactService.getContactByDn(organisation.getLegalContact()).orElse(null);
     }
 
     public void addRoles(Organisation organisation, Contact contact, List<String> roles) {
@@ -299,13 +336,11 @@ public class OrganisationService {
         return role -> role + "@" + organisation.getName();
     }
 
-    private void createAssetContainer(String organisationDn) {
+    private void createAssetContainer(DnTemplate organisationDn) {
         Container assetContainer = new Container();
 
         assetContainer.setOu(LdapConstants.ASSET_CONTAINER_NAME);
-        assetContainer.setDn(LdapNameBuilder.newInstance(organisationDn)
-                .add(LdapConstants.OU, LdapConstants.ASSET_CONTAINER_NAME)
-                .build());
+        assetContainer.setDn(organisationDn.name(LdapConstants.OU, LdapConstants.ASSET_CONTAINER_NAME));
 
 
         ldapService.createEntry(assetContainer);
@@ -316,28 +351,27 @@ public class OrganisationService {
         asset.setAssetId(organisation.getName().replace("_", "."));
         asset.setDescription("Primær ressurs");
         assetService.addPrimaryAsset(asset, organisation);
+
+        setPrimaryAsset(organisation, asset);
+        ldapService.updateEntry(organisation);
     }
 
-    private void createClientContainer(String organisationDn) {
+    private void createClientContainer(DnTemplate organisationDn) {
         Container clientContainer = new Container();
 
         clientContainer.setOu(LdapConstants.CLIENT_CONTAINER_NAME);
-        clientContainer.setDn(LdapNameBuilder.newInstance(organisationDn)
-                .add(LdapConstants.OU, LdapConstants.CLIENT_CONTAINER_NAME)
-                .build());
+        clientContainer.setDn(organisationDn.name(LdapConstants.OU, LdapConstants.CLIENT_CONTAINER_NAME));
 
 
         ldapService.createEntry(clientContainer);
 
     }
 
-    private void createAdapterContainer(String organisationDn) {
+    private void createAdapterContainer(DnTemplate organisationDn) {
         Container adapterContainer = new Container();
 
         adapterContainer.setOu(LdapConstants.ADAPTER_CONTAINER_NAME);
-        adapterContainer.setDn(LdapNameBuilder.newInstance(organisationDn)
-                .add(LdapConstants.OU, LdapConstants.ADAPTER_CONTAINER_NAME)
-                .build());
+        adapterContainer.setDn(organisationDn.name(LdapConstants.OU, LdapConstants.ADAPTER_CONTAINER_NAME));
         ldapService.createEntry(adapterContainer);
     }
 
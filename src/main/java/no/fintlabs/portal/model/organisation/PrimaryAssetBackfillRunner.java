@@ -0,0 +1,30 @@
+package no.fintlabs.portal.model.organisation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * One-off job storing the primary asset on existing organisation entries. Enable it for a single deploy with
+ * {@code fint.ldap.backfill.primary-asset=true}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "fint.ldap.backfill.primary-asset", havingValue = "true")
+public class PrimaryAssetBackfillRunner implements ApplicationRunner {
+
+    private final OrganisationService organisationService;
+
+    public PrimaryAssetBackfillRunner(OrganisationService organisationService) {
+        this.organisationService = organisationService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        log.info("Backfilling primary asset on organisations...");
+        long updated = organisationService.backfillPrimaryAssets();
+        log.info("Primary asset stored on {} organisations", updated);
+    }
+}
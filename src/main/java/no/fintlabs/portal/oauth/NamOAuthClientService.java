@@ -1,96 +1,50 @@
 package no.fintlabs.portal.oauth;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.security.oauth2.client.OAuth2RestTemplate;
-import org.springframework.security.oauth2.client.token.grant.password.ResourceOwnerPasswordResourceDetails;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
-import javax.annotation.PostConstruct;
-import java.util.Collections;
+import java.util.List;
 
+/**
+ * Blocking view of {@link ReactiveNamOAuthClientService}.
+ */
 @Service
 @Slf4j
 public class NamOAuthClientService {
 
     @Autowired
-    private ObjectMapper mapper;
-    @Value("${fint.nam.oauth.username}")
-    private String username;
-    @Value("${fint.nam.oauth.password}")
-    private String password;
-    @Value("${fint.nam.oauth.idp-hostname}")
-    private String idpHostname;
-    @Value("${fint.nam.oauth.clientId}")
-    private String clientId;
-    @Value("${fint.nam.oauth.clientSecret}")
-    private String clientSecret;
-
-    private RestTemplate restTemplate;
-
-    @PostConstruct
-    private void init() {
-
-        ResourceOwnerPasswordResourceDetails resourceDetails = new ResourceOwnerPasswordResourceDetails();
-        resourceDetails.setUsername(username);
-        resourceDetails.setPassword(password);
-        resourceDetails.setAccessTokenUri(String.format(NamOAuthConstants.ACCESS_TOKEN_URL_TEMPLATE, idpHostname));
-        resourceDetails.setClientId(clientId);
-        resourceDetails.setClientSecret(clientSecret);
-        resourceDetails.setGrantType(NamOAuthConstants.PASSWORD_GRANT_TYPE);
-        resourceDetails.setScope(Collections.singletonList(NamOAuthConstants.SCOPE));
-
-        restTemplate = new OAuth2RestTemplate(resourceDetails);
-    }
+    private ReactiveNamOAuthClientService reactiveNamOAuthClientService;
 
     public OAuthClient addOAuthClient(String name) {
-        log.info("Adding client {}...", name);
-        OAuthClient oAuthClient = new OAuthClient(name);
-        String jsonOAuthClient = null;
-
         try {
-            jsonOAuthClient = mapper.writeValueAsString(oAuthClient);
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-        }
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        HttpEntity<String> request = new HttpEntity<>(jsonOAuthClient, headers);
-
-        try {
-            String response = restTemplate.postForObject(NamOAuthConstants.CLIENT_REGISTRATION_URL_TEMPLATE, request, String.class, idpHostname);
-            OAuthClient client = mapper.readValue(response, OAuthClient.class);
-            log.info("Client ID {} created.", client.getClientId());
-            return client;
+            return reactiveNamOAuthClientService.addOAuthClient(name).block();
         } catch (Exception e) {
             log.error("Unable to create client {}", name, e);
             throw new RuntimeException(e);
         }
     }
 
+    public List<OAuthClientRegistration> addOAuthClients(List<String> names) {
+        return reactiveNamOAuthClientService.addOAuthClients(names).collectList().block();
+    }
+
     public void removeOAuthClient(String clientId) {
-        log.info("Deleting client {}...", clientId);
         try {
-            restTemplate.delete(NamOAuthConstants.CLIENT_URL_TEMPLATE, idpHostname, clientId);
+            reactiveNamOAuthClientService.removeOAuthClient(clientId).block();
         } catch (Exception e) {
             log.error("Unable to delete client {}", clientId, e);
             throw e;
         }
     }
 
+    public List<OAuthClientRemoval> removeOAuthClients(List<String> clientIds) {
+        return reactiveNamOAuthClientService.removeOAuthClients(clientIds).collectList().block();
+    }
+
     public OAuthClient getOAuthClient(String clientId) {
-        log.info("Fetching client {}...", clientId);
         try {
-            return restTemplate.getForObject(NamOAuthConstants.CLIENT_URL_TEMPLATE, OAuthClient.class, idpHostname, clientId);
+            return reactiveNamOAuthClientService.getOAuthClient(clientId).block();
         } catch (Exception e) {
             log.error("Unable to get client {}", clientId, e);
             throw e;
@@ -0,0 +1,53 @@
+package no.fintlabs.portal.oauth;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * OAuth clients, and with them the client secrets, read from NAM keyed by client id.
+ */
+@Slf4j
+@Component
+public class OAuthClientCache {
+
+    private final Cache<String, OAuthClient> clients;
+
+    public OAuthClientCache(
+            @Value("${fint.nam.oauth.cache.maximum-size:10000}") long maximumSize,
+            @Value("${fint.nam.oauth.cache.time-to-live:30m}") Duration timeToLive,
+            MeterRegistry meterRegistry
+    ) {
+        clients = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+
+        GuavaCacheMetrics.monitor(meterRegistry, clients, "nam.oauth.clients");
+
+        log.info("OAuth client cache: {} clients, time to live {}", maximumSize, timeToLive);
+    }
+
+    public OAuthClient getIfPresent(String clientId) {
+        return clientId == null ? null : clients.getIfPresent(clientId);
+    }
+
+    public void put(OAuthClient client) {
+        if (client != null && client.getClientId() != null && client.getClientSecret() != null) {
+            clients.put(client.getClientId(), client);
+        }
+    }
+
+    public void invalidate(String clientId) {
+        if (clientId != null) {
+            clients.invalidate(clientId);
+        }
+    }
+}
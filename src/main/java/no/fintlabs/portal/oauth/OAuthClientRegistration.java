@@ -0,0 +1,28 @@
+package no.fintlabs.portal.oauth;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Outcome of registering one OAuth client in a bulk registration.
+ */
+@Data
+@AllArgsConstructor
+public class OAuthClientRegistration {
+
+    private String name;
+    private OAuthClient client;
+    private String errorMessage;
+
+    public static OAuthClientRegistration successful(String name, OAuthClient client) {
+        return new OAuthClientRegistration(name, client, null);
+    }
+
+    public static OAuthClientRegistration failed(String name, Throwable error) {
+        return new OAuthClientRegistration(name, null, error.getMessage());
+    }
+
+    public boolean isSuccessful() {
+        return client != null;
+    }
+}
@@ -0,0 +1,27 @@
+package no.fintlabs.portal.oauth;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Outcome of removing one OAuth client in a bulk removal.
+ */
+@Data
+@AllArgsConstructor
+public class OAuthClientRemoval {
+
+    private String clientId;
+    private String errorMessage;
+
+    public static OAuthClientRemoval successful(String clientId) {
+        return new OAuthClientRemoval(clientId, null);
+    }
+
+    public static OAuthClientRemoval failed(String clientId, Throwable error) {
+        return new OAuthClientRemoval(clientId, error.getMessage());
+    }
+
+    public boolean isSuccessful() {
+        return errorMessage == null;
+    }
+}
@@ -0,0 +1,213 @@
+package no.fintlabs.portal.oauth;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.netty.channel.ChannelOption;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Non-blocking client for the NAM OAuth client registration API.
+ * <p>
+ * The password grant access token is shared by all calls and renewed {@code token-refresh-margin} before it expires.
+ */
+@Slf4j
+@Service
+public class ReactiveNamOAuthClientService {
+
+    private final WebClient webClient;
+    private final OAuthClientCache clientCache;
+    private final String idpHostname;
+    private final Mono<String> accessToken;
+
+    @Value("${fint.nam.oauth.bulk.concurrency:4}")
+    private int bulkConcurrency = 4;
+
+    @Value("${fint.nam.oauth.bulk.max-retries:5}")
+    private int bulkMaxRetries = 5;
+
+    @Value("${fint.nam.oauth.bulk.min-backoff:500ms}")
+    private Duration bulkMinBackoff = Duration.ofMillis(500);
+
+    @Value("${fint.nam.oauth.bulk.max-backoff:10s}")
+    private Duration bulkMaxBackoff = Duration.ofSeconds(10);
+
+    public ReactiveNamOAuthClientService(
+            @Value("${fint.nam.oauth.username}") String username,
+            @Value("${fint.nam.oauth.password}") String password,
+            @Value("${fint.nam.oauth.idp-hostname}") String idpHostname,
+            @Value("${fint.nam.oauth.clientId}") String clientId,
+            @Value("${fint.nam.oauth.clientSecret}") String clientSecret,
+            @Value("${fint.nam.oauth.pool.max-connections:50}") int maxConnections,
+            @Value("${fint.nam.oauth.pool.max-idle-time:30s}") Duration maxIdleTime,
+            @Value("${fint.nam.oauth.pool.pending-acquire-timeout:10s}") Duration pendingAcquireTimeout,
+            @Value("${fint.nam.oauth.connect-timeout:5s}") Duration connectTimeout,
+            @Value("${fint.nam.oauth.response-timeout:15s}") Duration responseTimeout,
+            @Value("${fint.nam.oauth.token-refresh-margin:60s}") Duration tokenRefreshMargin,
+            WebClient.Builder webClientBuilder,
+            OAuthClientCache clientCache
+    ) {
+        this.idpHostname = idpHostname;
+        this.clientCache = clientCache;
+
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("nam")
+                .maxConnections(maxConnections)
+                .maxIdleTime(maxIdleTime)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(responseTimeout);
+
+        webClient = webClientBuilder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+
+        accessToken = webClient.post()
+                .uri(String.format(NamOAuthConstants.ACCESS_TOKEN_URL_TEMPLATE, idpHostname))
+                .headers(headers -> headers.setBasicAuth(clientId, clientSecret))
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .body(BodyInserters.fromFormData("grant_type", NamOAuthConstants.PASSWORD_GRANT_TYPE)
+                        .with("username", username)
+                        .with("password", password)
+                        .with("scope", NamOAuthConstants.SCOPE))
+                .retrieve()
+                .bodyToMono(AccessToken.class)
+                .doOnNext(token -> log.debug("Obtained NAM access token valid for {} seconds", token.getExpiresIn()))
+                .cache(
+                        token -> max(Duration.ofSeconds(token.getExpiresIn()).minus(tokenRefreshMargin), Duration.ZERO),
+                        error -> Duration.ZERO,
+                        () -> Duration.ZERO
+                )
+                .map(AccessToken::getAccessToken);
+
+        log.info("NAM client: {} connections, connect timeout {}, response timeout {}", maxConnections, connectTimeout, responseTimeout);
+    }
+
+    public Mono<OAuthClient> addOAuthClient(String name) {
+        return accessToken.flatMap(token -> webClient.post()
+                        .uri(NamOAuthConstants.CLIENT_REGISTRATION_URL_TEMPLATE, idpHostname)
+                        .headers(headers -> headers.setBearerAuth(token))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(new OAuthClient(name))
+                        .retrieve()
+                        .bodyToMono(OAuthClient.class))
+                .doOnSubscribe(subscription -> log.info("Adding client {}...", name))
+                .doOnNext(client -> {
+                    log.info("Client ID {} created.", client.getClientId());
+                    clientCache.put(client);
+                });
+    }
+
+    /**
+     * Registers the clients with at most {@code bulk.concurrency} registrations in flight. Registrations NAM turns
+     * down with 429 or 503 are retried with exponential backoff. Other server errors are not retried, since the
+     * registration may have been created before the error and a repeated POST would create a second client. The
+     * result holds one registration per name, successful or not, in completion order.
+     */
+    public Flux<OAuthClientRegistration> addOAuthClients(Collection<String> names) {
+        return Flux.fromIterable(names)
+                .flatMap(name -> addOAuthClient(name)
+                                .retryWhen(Retry.backoff(bulkMaxRetries, bulkMinBackoff)
+                                        .maxBackoff(bulkMaxBackoff)
+                                        .filter(ReactiveNamOAuthClientService::isRejected)
+                                        .doBeforeRetry(signal -> log.warn("Retrying registration of client {} after {}", name, signal.failure().getMessage())))
+                                .map(client -> OAuthClientRegistration.successful(name, client))
+                                .onErrorResume(e -> {
+                                    log.error("Unable to create client {}", name, e);
+                                    return Mono.just(OAuthClientRegistration.failed(name, e));
+                                }),
+                        bulkConcurrency);
+    }
+
+    /**
+     * Removes the clients with at most {@code bulk.concurrency} removals in flight. Removals NAM turns down with 429
+     * or a server error are retried with exponential backoff. Clients NAM does not know are reported as removed, so a failed removal
+     * can be repeated. The result holds one removal per client id, in completion order.
+     */
+    public Flux<OAuthClientRemoval> removeOAuthClients(Collection<String> clientIds) {
+        return Flux.fromIterable(clientIds)
+                .flatMap(clientId -> removeOAuthClient(clientId)
+                                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.empty())
+                                .retryWhen(Retry.backoff(bulkMaxRetries, bulkMinBackoff)
+                                        .maxBackoff(bulkMaxBackoff)
+                                        .filter(ReactiveNamOAuthClientService::isRetryable)
+                                        .doBeforeRetry(signal -> log.warn("Retrying removal of client {} after {}", clientId, signal.failure().getMessage())))
+                                .thenReturn(OAuthClientRemoval.successful(clientId))
+                                .onErrorResume(e -> {
+                                    log.error("Unable to delete client {}", clientId, e);
+                                    return Mono.just(OAuthClientRemoval.failed(clientId, e));
+                                }),
+                        bulkConcurrency);
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException) {
+            HttpStatus status = ((WebClientResponseException) e).getStatusCode();
+            return status == HttpStatus.TOO_MANY_REQUESTS || status.is5xxServerError();
+        }
+        return false;
+    }
+
+    private static boolean isRejected(Throwable e) {
+        if (e instanceof WebClientResponseException) {
+            HttpStatus status = ((WebClientResponseException) e).getStatusCode();
+            return status == HttpStatus.TOO_MANY_REQUESTS || status == HttpStatus.SERVICE_UNAVAILABLE;
+        }
+        return false;
+    }
+
+    public Mono<Void> removeOAuthClient(String clientId) {
+        return accessToken.flatMap(token -> webClient.delete()
+                        .uri(NamOAuthConstants.CLIENT_URL_TEMPLATE, idpHostname, clientId)
+                        .headers(headers -> headers.setBearerAuth(token))
+                        .retrieve()
+                        .bodyToMono(Void.class))
+                .doOnSubscribe(subscription -> {
+                    log.info("Deleting client {}...", clientId);
+                    clientCache.invalidate(clientId);
+                });
+    }
+
+    public Mono<OAuthClient> getOAuthClient(String clientId) {
+        return Mono.justOrEmpty(clientCache.getIfPresent(clientId))
+                .switchIfEmpty(Mono.defer(() -> accessToken.flatMap(token -> webClient.get()
+                                .uri(NamOAuthConstants.CLIENT_URL_TEMPLATE, idpHostname, clientId)
+                                .headers(headers -> headers.setBearerAuth(token))
+                                .retrieve()
+                                .bodyToMono(OAuthClient.class))
+                        .doOnSubscribe(subscription -> log.info("Fetching client {}...", clientId))
+                        .doOnNext(clientCache::put)));
+    }
+
+    private static Duration max(Duration a, Duration b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class AccessToken {
+
+        @JsonProperty("access_token")
+        private String accessToken;
+
+        @JsonProperty("expires_in")
+        private long expiresIn;
+    }
+}
@@ -0,0 +1,91 @@
+package no.fintlabs.portal.config
+
+import no.fintlabs.portal.ldap.ReadYourWrites
+import org.springframework.ldap.CommunicationException
+import org.springframework.ldap.core.support.LdapContextSource
+import org.springframework.ldap.pool2.factory.PoolConfig
+import spock.lang.Specification
+
+import javax.naming.directory.DirContext
+import java.time.Duration
+
+class ReplicaRoutingContextSourceSpec extends Specification {
+
+    private master
+    private replica1
+    private replica2
+    private readYourWrites
+    private contextSource
+
+    def setup() {
+        master = Mock(InstrumentedPooledContextSource)
+        replica1 = Mock(InstrumentedPooledContextSource)
+        replica2 = Mock(InstrumentedPooledContextSource)
+        readYourWrites = new ReadYourWrites("ldap://replica1,ldap://replica2", Duration.ofMinutes(1))
+        contextSource = new ReplicaRoutingContextSource(master, [replica1, replica2], readYourWrites)
+    }
+
+    def "Reads are spread over the replicas"() {
+        when:
+        contextSource.getReadOnlyContext()
+        contextSource.getReadOnlyContext()
+
+        then:
+        1 * replica1.getReadOnlyContext() >> Mock(DirContext)
+        1 * replica2.getReadOnlyContext() >> Mock(DirContext)
+        0 * master.getReadOnlyContext()
+    }
+
+    def "Reads following a write on the same thread go to the master"() {
+        when:
+        contextSource.getReadWriteContext()
+        contextSource.getReadOnlyContext()
+
+        then:
+        1 * master.getReadWriteContext() >> Mock(DirContext)
+        1 * master.getReadOnlyContext() >> Mock(DirContext)
+        0 * replica1.getReadOnlyContext()
+        0 * replica2.getReadOnlyContext()
+        readYourWrites.isWithinWindow()
+    }
+
+    def "Reads on other threads go to the replicas within the window"() {
+        when:
+        contextSource.getReadWriteContext()
+        def withinWindow = null
+        def thread = Thread.start { withinWindow = readYourWrites.isWithinWindow() }
+        thread.join()
+
+        then:
+        1 * master.getReadWriteContext() >> Mock(DirContext)
+        withinWindow == false
+    }
+
+    def "Reads fall back to the master when no replica can be reached"() {
+        when:
+        contextSource.getReadOnlyContext()
+
+        then:
+        1 * replica1.getReadOnlyContext() >> { throw new CommunicationException(new javax.naming.CommunicationException("down")) }
+        1 * replica2.getReadOnlyContext() >> { throw new CommunicationException(new javax.naming.CommunicationException("down")) }
+        1 * master.getReadOnlyContext() >> Mock(DirContext)
+    }
+
+    def "Reads fall back to the master when the replica pool cannot open a connection"() {
+        given:
+        def unreachable = new LdapContextSource(url: "ldap://localhost:1", userDn: "cn=admin", password: "secret")
+        unreachable.afterPropertiesSet()
+        def replica = new InstrumentedPooledContextSource(new PoolConfig(maxWaitMillis: 100), "unreachable")
+        replica.contextSource = unreachable
+        def routing = new ReplicaRoutingContextSource(master, [replica], readYourWrites)
+
+        when:
+        routing.getReadOnlyContext()
+
+        then:
+        1 * master.getReadOnlyContext() >> Mock(DirContext)
+
+        cleanup:
+        replica.destroy()
+    }
+}
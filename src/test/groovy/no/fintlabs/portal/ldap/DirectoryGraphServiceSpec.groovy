@@ -0,0 +1,137 @@
+package no.fintlabs.portal.ldap
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import no.fintlabs.portal.model.client.Client
+import no.fintlabs.portal.testutils.ObjectFactory
+import org.springframework.ldap.core.ContextSource
+import org.springframework.ldap.core.LdapTemplate
+import org.springframework.ldap.core.support.LdapContextSource
+import spock.lang.Specification
+
+import javax.naming.Name
+import javax.naming.NamingEnumeration
+import javax.naming.directory.SearchControls
+import javax.naming.ldap.LdapContext
+import java.time.Duration
+
+class DirectoryGraphServiceSpec extends Specification {
+
+    private static final String CLIENT = "cn=TestClient,ou=clients,ou=test_no,ou=org,o=fint"
+
+    private service
+
+    void setup() {
+        service = new DirectoryGraphService(
+                new LdapTemplate(Mock(ContextSource)),
+                Mock(LdapContextSource),
+                "ou=org,o=fint", "ou=comp,o=fint", "ou=contacts,o=fint",
+                true, false, Duration.ofMinutes(1), Duration.ofMinutes(15), Duration.ofMinutes(1), 500,
+                new SimpleMeterRegistry())
+    }
+
+    void cleanup() {
+        service.destroy()
+    }
+
+    def "Graph is empty until it is loaded"() {
+        expect:
+        !service.current().isPresent()
+    }
+
+    def "Nothing is applied when the graph is disabled"() {
+        given:
+        def disabled = new DirectoryGraphService(
+                new LdapTemplate(Mock(ContextSource)),
+                Mock(LdapContextSource),
+                "ou=org,o=fint", "ou=comp,o=fint", "ou=contacts,o=fint",
+                false, false, Duration.ofMinutes(1), Duration.ofMinutes(15), Duration.ofMinutes(1), 500,
+                new SimpleMeterRegistry())
+        def client = ObjectFactory.newClient()
+        client.dn = CLIENT
+
+        when:
+        disabled.run(null)
+        disabled.written(client)
+        disabled.applyChanges()
+
+        then:
+        !disabled.current().isPresent()
+
+        cleanup:
+        disabled.destroy()
+    }
+
+    def "Entries written and removed by this instance are applied to the graph"() {
+        given:
+        service.graph.set(DirectoryGraph.of([]))
+        def client = ObjectFactory.newClient()
+        client.dn = CLIENT
+
+        when:
+        service.written(client)
+        service.applyChanges()
+
+        then:
+        service.current().get().get(CLIENT, Client).get().name == "TestClient"
+        service.current().get().getAll("ou=clients,ou=test_no,ou=org,o=fint", Client).size() == 1
+
+        when:
+        service.removed("ou=test_no,ou=org,o=fint")
+        service.applyChanges()
+
+        then:
+        !service.current().get().contains(CLIENT)
+    }
+
+    def "Pending writes only hide the graph for the bases they touch"() {
+        given:
+        service.graph.set(DirectoryGraph.of([]))
+        def client = ObjectFactory.newClient()
+        client.dn = CLIENT
+        def bases = ["ou=clients,ou=test_no,ou=org,o=fint", "ou=org,o=fint", "ou=clients,ou=other_no,ou=org,o=fint", "ou=comp,o=fint"]
+        def whileWritten
+        def whileRemoved
+
+        when:
+        synchronized (service) {
+            service.written(client)
+            whileWritten = bases.collect { service.current(it).isPresent() }
+            service.removed("ou=test_no,ou=org,o=fint")
+            whileRemoved = bases.collect { service.current(it).isPresent() }
+        }
+        service.applyChanges()
+
+        then:
+        whileWritten == [false, false, true, true]
+        whileRemoved == [false, false, true, true]
+        bases.every { service.current(it).isPresent() }
+        !service.current().get().contains(CLIENT)
+    }
+
+    def "The graph is read from the master, not through the template's context source"() {
+        given:
+        def routing = Mock(ContextSource)
+        def master = Mock(LdapContextSource)
+        def ldapContext = Mock(LdapContext)
+        def found = Mock(NamingEnumeration)
+        def reloading = new DirectoryGraphService(
+                new LdapTemplate(routing),
+                master,
+                "ou=org,o=fint", "ou=comp,o=fint", "ou=contacts,o=fint",
+                true, false, Duration.ofMinutes(1), Duration.ofMinutes(15), Duration.ofMinutes(1), 500,
+                new SimpleMeterRegistry())
+
+        when:
+        reloading.reload()
+
+        then:
+        3 * master.getReadOnlyContext() >> ldapContext
+        0 * routing.getReadOnlyContext()
+        3 * ldapContext.search(_ as Name, _ as String, _ as SearchControls) >> found
+        _ * found.hasMore() >> false
+        reloading.current().get().size() == 0
+
+        cleanup:
+        reloading.destroy()
+    }
+}
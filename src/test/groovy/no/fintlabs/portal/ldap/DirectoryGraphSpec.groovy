@@ -0,0 +1,93 @@
+package no.fintlabs.portal.ldap
+
+import no.fintlabs.portal.model.asset.Asset
+import no.fintlabs.portal.model.component.Component
+import no.fintlabs.portal.model.organisation.Organisation
+import no.fintlabs.portal.testutils.ObjectFactory
+import spock.lang.Specification
+
+class DirectoryGraphSpec extends Specification {
+
+    private static final String ORGANISATION = "ou=test_no,ou=organisations,o=fint"
+    private static final String ASSET = "ou=test_no,ou=assets,ou=test_no,ou=organisations,o=fint"
+    private static final String COMPONENT = "ou=administrasjon_personal,ou=components,o=fint"
+
+    private graph
+
+    def setup() {
+        def organisation = ObjectFactory.newOrganisation()
+        organisation.setDn(ORGANISATION)
+        def asset = ObjectFactory.newAsset()
+        asset.setDn(ASSET)
+        def component = ObjectFactory.newComponent()
+        component.setDn(COMPONENT)
+
+        graph = DirectoryGraph.of([
+                DirectoryGraph.Node.of(ORGANISATION, organisation, [fintOrganisationComponents: [COMPONENT]]),
+                DirectoryGraph.Node.of(ASSET, asset, [fintAssetOrganisation: ["OU=test_no, ou=organisations, o=fint"]]),
+                DirectoryGraph.Node.of(COMPONENT, component, [fintComponentOrganisations: [ORGANISATION]])
+        ])
+    }
+
+    def "Links are followed both ways"() {
+        expect:
+        graph.getLinks(ORGANISATION, "fintOrganisationComponents", Component)*.dn == [COMPONENT]
+        graph.getBacklinks(ORGANISATION, "fintAssetOrganisation", Asset)*.dn == [ASSET]
+        graph.getBacklinks(COMPONENT, "fintOrganisationComponents", Organisation)*.dn == [ORGANISATION]
+        graph.getBacklinks(ORGANISATION, "fintAssetOrganisation", Component).isEmpty()
+    }
+
+    def "Entries below a base"() {
+        expect:
+        graph.getAll("ou=organisations,o=fint", Asset)*.dn == [ASSET]
+        graph.getAll("ou=organisations,o=fint", Organisation)*.dn == [ORGANISATION]
+        graph.getAll("o=fint", Asset).size() == 1
+    }
+
+    def "Entries are handed out as copies"() {
+        when:
+        graph.get(ORGANISATION, Organisation).get().setDisplayName("Changed")
+
+        then:
+        graph.get(ORGANISATION, Organisation).get().displayName == "Test organisation"
+    }
+
+    def "Changes update the entries they touch"() {
+        given:
+        def asset = ObjectFactory.newAsset()
+        asset.setDn("ou=sub,ou=assets,ou=test_no,ou=organisations,o=fint")
+
+        when:
+        graph.apply([DirectoryGraph.Node.of(asset.dn, asset, [fintAssetOrganisation: [ORGANISATION]])], [])
+
+        then:
+        graph.size() == 4
+        graph.getBacklinks(ORGANISATION, "fintAssetOrganisation", Asset).size() == 2
+        graph.getAll(ORGANISATION, Asset).size() == 2
+
+        when:
+        graph.apply([], [ORGANISATION])
+
+        then:
+        graph.size() == 1
+        !graph.contains(ASSET)
+        graph.getAll("o=fint", Asset).isEmpty()
+        graph.getBacklinks(COMPONENT, "fintOrganisationComponents", Organisation).isEmpty()
+        graph.getBacklinks(ORGANISATION, "fintAssetOrganisation", Asset).isEmpty()
+    }
+
+    def "Replacing an entry moves its backlinks"() {
+        given:
+        def asset = ObjectFactory.newAsset()
+        asset.setDn(ASSET)
+
+        when:
+        graph.apply([DirectoryGraph.Node.of(ASSET, asset, [fintAssetOrganisation: [COMPONENT]])], [])
+
+        then:
+        graph.size() == 3
+        graph.getBacklinks(ORGANISATION, "fintAssetOrganisation", Asset).isEmpty()
+        graph.getBacklinks(COMPONENT, "fintAssetOrganisation", Asset)*.dn == [ASSET]
+        graph.getAll(ORGANISATION, Asset)*.dn == [ASSET]
+    }
+}
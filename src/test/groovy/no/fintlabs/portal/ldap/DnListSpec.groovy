@@ -0,0 +1,64 @@
+package no.fintlabs.portal.ldap
+
+import spock.lang.Specification
+
+class DnListSpec extends Specification {
+
+    def "Values are unique ignoring case and spacing"() {
+        given:
+        def dns = new DnList()
+
+        when:
+        def added1 = dns.add("cn=c1,ou=clients,o=fint")
+        def added2 = dns.add("CN=c1, ou=Clients,o=fint")
+        def added3 = dns.add("ROLE_ADMIN@testOrg")
+        def added4 = dns.add("role_admin@testorg")
+
+        then:
+        added1
+        !added2
+        added3
+        !added4
+        dns == ["cn=c1,ou=clients,o=fint", "ROLE_ADMIN@testOrg"]
+        dns.contains("cn=C1,ou=clients,o=FINT")
+        dns.find("cn=C1,ou=clients,o=FINT") == "cn=c1,ou=clients,o=fint"
+    }
+
+    def "Remove keeps the order of the remaining values"() {
+        given:
+        def dns = new DnList(["cn=c1,o=fint", "cn=c2,o=fint", "cn=c3,o=fint"])
+
+        when:
+        dns.remove("CN=c2,o=fint")
+        dns.removeIf { it.startsWith("cn=c3") }
+
+        then:
+        dns == ["cn=c1,o=fint"]
+        dns.get(0) == "cn=c1,o=fint"
+    }
+
+    def "Of wraps other lists once"() {
+        given:
+        def values = ["cn=c1,o=fint", "cn=C1,o=fint"]
+
+        when:
+        def dns = DnList.of(values)
+
+        then:
+        dns.size() == 1
+        DnList.of(dns).is(dns)
+        DnList.of(null).isEmpty()
+    }
+
+    def "Parent walks up to the empty DN"() {
+        expect:
+        DnList.parent(dn) == parent
+
+        where:
+        dn                    || parent
+        "cn=c1,ou=org,o=fint" || "ou=org,o=fint"
+        "cn=a\\,b,o=fint"     || "o=fint"
+        "o=fint"              || ""
+        ""                    || null
+    }
+}
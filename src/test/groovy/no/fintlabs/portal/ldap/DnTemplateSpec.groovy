@@ -0,0 +1,59 @@
+package no.fintlabs.portal.ldap
+
+import org.springframework.ldap.support.LdapNameBuilder
+import spock.lang.Specification
+
+class DnTemplateSpec extends Specification {
+
+    def "Child DNs match the ones built by LdapNameBuilder"() {
+        given:
+        def template = DnTemplate.of("ou=organisations, o=fint")
+
+        expect:
+        template.dn("ou", value) == LdapNameBuilder.newInstance("ou=organisations, o=fint").add("ou", value).build().toString()
+        template.name("ou", value) == LdapNameBuilder.newInstance("ou=organisations, o=fint").add("ou", value).build()
+
+        where:
+        value << ["fintlabs_no", "a,b", "with+plus", " leading space", "#hash"]
+    }
+
+    def "Children are built on the parsed base"() {
+        given:
+        def template = DnTemplate.of("ou=organisations,o=fint").child("ou", "fintlabs_no").child("ou", "clients")
+
+        expect:
+        template.toString() == "ou=clients,ou=fintlabs_no,ou=organisations,o=fint"
+        template.dn("cn", "client@client.fintlabs.no") == "cn=client@client.fintlabs.no,ou=clients,ou=fintlabs_no,ou=organisations,o=fint"
+        template.toName().size() == 5
+    }
+
+    def "Children are built without parsing and match LdapNameBuilder"() {
+        given:
+        def child = DnTemplate.of("ou=organisations, o=fint").child("ou", value)
+        def expected = LdapNameBuilder.newInstance("ou=organisations, o=fint").add("ou", value).build()
+
+        expect:
+        child.toString() == expected.toString()
+        child.toName() == expected
+        child.dn("cn", "x") == LdapNameBuilder.newInstance(expected).add("cn", "x").build().toString()
+
+        where:
+        value << ["fintlabs_no", "a,b", "with+plus", " leading space", "#hash"]
+    }
+
+    def "Names returned are copies"() {
+        given:
+        def template = DnTemplate.of("o=fint")
+
+        when:
+        template.toName().add("ou=changed")
+
+        then:
+        template.toName().size() == 1
+    }
+
+    def "Empty base"() {
+        expect:
+        DnTemplate.of("").dn("o", "fint") == "o=fint"
+    }
+}
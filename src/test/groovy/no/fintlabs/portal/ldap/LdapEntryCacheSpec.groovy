@@ -0,0 +1,119 @@
+package no.fintlabs.portal.ldap
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.function.Supplier
+
+class LdapEntryCacheSpec extends Specification {
+
+    private static final String CLIENT = "cn=client1,ou=clients,ou=test_no,ou=org,o=fint"
+    private static final String OTHER_CLIENT = "cn=client1,ou=clients,ou=other_no,ou=org,o=fint"
+    private static final String CLIENTS = "ou=clients,ou=test_no,ou=org,o=fint"
+
+    private readYourWrites
+    private cache
+    private loader
+
+    void setup() {
+        readYourWrites = new ReadYourWrites("ldap://replica", Duration.ofMinutes(1))
+        cache = new LdapEntryCache(100, 100, Duration.ofMinutes(1), new SimpleMeterRegistry())
+        cache.readYourWrites = readYourWrites
+        loader = Mock(Supplier)
+    }
+
+    def "Entries are cached while other parts of the directory are written"() {
+        given:
+        cache.invalidate(OTHER_CLIENT)
+
+        when:
+        cache.getEntry(CLIENT, String, loader)
+        def entry = cache.getEntry(CLIENT, String, loader)
+
+        then:
+        entry == "client1"
+        1 * loader.get() >> "client1"
+    }
+
+    def "Entries written on another thread within the window are not cached from a replica"() {
+        given:
+        cache.invalidate(CLIENT)
+
+        when:
+        cache.getEntry(CLIENT, String, loader)
+        cache.getEntry(CLIENT, String, loader)
+
+        then:
+        2 * loader.get() >> "client1"
+    }
+
+    def "Entries written on this thread are cached, since they are read from the master"() {
+        given:
+        cache.invalidate(CLIENT)
+        readYourWrites.written()
+
+        when:
+        cache.getEntry(CLIENT, String, loader)
+        cache.getEntry(CLIENT, String, loader)
+
+        then:
+        1 * loader.get() >> "client1"
+    }
+
+    def "Searches at or above an entry written within the window are not cached, other searches are"() {
+        given:
+        cache.invalidate(CLIENT)
+
+        when:
+        cache.search(CLIENTS, String, null, loader)
+        cache.search(CLIENTS, String, null, loader)
+
+        then:
+        2 * loader.get() >> ["client1"]
+
+        when:
+        cache.search("ou=clients,ou=other_no,ou=org,o=fint", String, null, loader)
+        cache.search("ou=clients,ou=other_no,ou=org,o=fint", String, null, loader)
+
+        then:
+        1 * loader.get() >> ["client1"]
+    }
+
+    def "Entries below a subtree deleted within the window are not cached"() {
+        given:
+        cache.invalidateSubtree("ou=test_no,ou=org,o=fint")
+
+        when:
+        cache.getEntry(CLIENT, String, loader)
+        cache.getEntry(CLIENT, String, loader)
+
+        then:
+        2 * loader.get() >> "client1"
+    }
+
+    def "Searches below a subtree deleted within the window are not cached"() {
+        given:
+        cache.invalidateSubtree("ou=test_no,ou=org,o=fint")
+
+        when:
+        cache.search(CLIENTS, String, null, loader)
+        cache.search(CLIENTS, String, null, loader)
+
+        then:
+        2 * loader.get() >> ["client1"]
+    }
+
+    def "Without replicas every read is cached"() {
+        given:
+        cache.readYourWrites = new ReadYourWrites("", Duration.ofMinutes(1))
+        cache.invalidate(CLIENT)
+
+        when:
+        cache.getEntry(CLIENT, String, loader)
+        cache.getEntry(CLIENT, String, loader)
+
+        then:
+        1 * loader.get() >> "client1"
+    }
+}
@@ -1,27 +1,53 @@
 package no.fintlabs.portal.ldap
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import no.fintlabs.portal.config.InstrumentedPooledContextSource
+import no.fintlabs.portal.config.ReplicaRoutingContextSource
+import no.fintlabs.portal.exceptions.UpdateEntityException
+import no.fintlabs.portal.model.component.Component
 import no.fintlabs.portal.model.contact.Contact
+import org.springframework.ldap.AttributeInUseException
+import org.springframework.ldap.NameAlreadyBoundException
 import org.springframework.ldap.NameNotFoundException
+import org.springframework.ldap.core.ContextExecutor
+import org.springframework.ldap.core.ContextMapper
+import org.springframework.ldap.core.DirContextAdapter
 import org.springframework.ldap.core.LdapTemplate
 import org.springframework.ldap.filter.EqualsFilter
+import org.springframework.ldap.support.LdapUtils
 import spock.lang.Specification
 
 import javax.naming.Name
+import javax.naming.NamingEnumeration
+import javax.naming.directory.BasicAttributes
+import javax.naming.directory.DirContext
+import javax.naming.directory.ModificationItem
 import javax.naming.directory.SearchControls
+import javax.naming.directory.SearchResult
+import javax.naming.ldap.LdapContext
+import java.time.Duration
 
 class LdapServiceSpec extends Specification {
 
     private ldapService
     private ldapTemplate
+    private meterRegistry
 
     void setup() {
         ldapTemplate = Mock(LdapTemplate)
-        ldapService = new LdapService(ldapTemplate: ldapTemplate)
+        meterRegistry = new SimpleMeterRegistry()
+        ldapService = new LdapService(
+                ldapTemplate: ldapTemplate,
+                entryCache: new LdapEntryCache(100, 100, Duration.ofMinutes(1), new SimpleMeterRegistry()),
+                metrics: new LdapMetrics(meterRegistry),
+                directoryGraph: Stub(DirectoryGraphService)
+        )
     }
 
     def "Create Entry"() {
         def contact1 = new Contact(dn: "name=test1,o=fint.no", firstName: "Ole", lastName: "Olsen")
         def contact2 = new Contact(dn: "name=test2,o=fint.no", firstName: "Ola", lastName: "Hansen")
+        ldapService.writeMode = LdapWriteMode.CHECK_EXISTS
 
         when:
         def created1 = ldapService.createEntry(contact1)
@@ -30,13 +56,29 @@ class LdapServiceSpec extends Specification {
         then:
         created1 == true
         created2 == false
-        ldapTemplate.lookup(_ as Name) >> { throw new NameNotFoundException("test") } >> null
+        ldapTemplate.search(_ as Name, _ as String, _ as SearchControls, _ as ContextMapper) >> { throw new NameNotFoundException("test") } >> [true]
         1 * ldapTemplate.create(_ as Contact)
     }
 
+    def "Create Entry directly"() {
+        def contact1 = new Contact(dn: "name=test1,o=fint.no", firstName: "Ole", lastName: "Olsen")
+        def contact2 = new Contact(dn: "name=test2,o=fint.no", firstName: "Ola", lastName: "Hansen")
+
+        when:
+        def created1 = ldapService.createEntry(contact1)
+        def created2 = ldapService.createEntry(contact2)
+
+        then:
+        created1 == true
+        created2 == false
+        0 * ldapTemplate.search(*_)
+        2 * ldapTemplate.create(_ as Contact) >> {} >> { throw new NameAlreadyBoundException(new javax.naming.NameAlreadyBoundException("test")) }
+    }
+
     def "Update Entry"() {
         def contact1 = new Contact(dn: "name=test1,o=fint.no", firstName: "Ole", lastName: "Olsen")
         def contact2 = new Contact(dn: "name=test2,o=fint.no", firstName: "Ola", lastName: "Hansen")
+        ldapService.writeMode = LdapWriteMode.CHECK_EXISTS
 
         when:
         def updated1 = ldapService.updateEntry(contact1)
@@ -45,15 +87,30 @@ class LdapServiceSpec extends Specification {
         then:
         updated1 == false
         updated2 == true
-        ldapTemplate.lookup(_ as Name) >> { throw new NameNotFoundException("test") } >> null
+        ldapTemplate.search(_ as Name, _ as String, _ as SearchControls, _ as ContextMapper) >> { throw new NameNotFoundException("test") } >> [true]
         1 * ldapTemplate.update(_ as Contact)
     }
 
+    def "Update Entry directly"() {
+        def contact1 = new Contact(dn: "name=test1,o=fint.no", firstName: "Ole", lastName: "Olsen")
+        def contact2 = new Contact(dn: "name=test2,o=fint.no", firstName: "Ola", lastName: "Hansen")
+
+        when:
+        def updated1 = ldapService.updateEntry(contact1)
+        def updated2 = ldapService.updateEntry(contact2)
+
+        then:
+        updated1 == false
+        updated2 == true
+        0 * ldapTemplate.search(*_)
+        2 * ldapTemplate.update(_ as Contact) >> { throw new NameNotFoundException("test") } >> {}
+    }
+
     def "Get Entry By Unique Name"() {
         when:
         def entry1 = ldapService.getEntryByUniqueName("test", "o=test", Contact.class)
         def entry2 = ldapService.getEntryByUniqueName(null, "test", Contact.class)
-        def entry3 = ldapService.getEntryByUniqueName("test", "o=test", Contact.class)
+        def entry3 = ldapService.getEntryByUniqueName("test2", "o=test", Contact.class)
 
         then:
         entry1 != null
@@ -81,7 +138,8 @@ class LdapServiceSpec extends Specification {
         then:
         exists1 == false
         exists2 == true
-        2 * ldapTemplate.lookup(_ as Name) >> { throw new NameNotFoundException("test") } >> null
+        2 * ldapTemplate.search(_ as Name, "(objectClass=*)", { it.searchScope == SearchControls.OBJECT_SCOPE && it.returningAttributes == ["1.1"] as String[] }, _ as ContextMapper) >>
+                { throw new NameNotFoundException("test") } >> [true]
     }
 
     def "Get Entry"() {
@@ -104,6 +162,100 @@ class LdapServiceSpec extends Specification {
         1 * ldapTemplate.findAll(_ as Name, _ as SearchControls, _ as Class) >> Arrays.asList(new Contact(), new Contact())
     }
 
+    def "Get All with filter"() {
+        given:
+        def filter = new EqualsFilter("fintContactRoles", "ROLE_ADMIN@test")
+
+        when:
+        def all1 = ldapService.getAll("o=fint", Contact.class, filter)
+        def all2 = ldapService.getAll("o=fint", Contact.class, filter)
+
+        then:
+        all1.size() == 1
+        all2.size() == 1
+        1 * ldapTemplate.find(_ as Name, filter, _ as SearchControls, Contact.class) >> [new Contact()]
+    }
+
+    def "Get Entry is served from cache until the entry is written"() {
+        given:
+        def contact = new Contact(dn: "cn=test1,o=fint.no", firstName: "Ole")
+
+        when:
+        def entry1 = ldapService.getEntry("cn=test1,o=fint.no", Contact.class)
+        entry1.firstName = "Changed"
+        def entry2 = ldapService.getEntry("CN=test1, o=fint.no", Contact.class)
+
+        then:
+        entry2.firstName == "Ole"
+        !entry1.is(entry2)
+        1 * ldapTemplate.findByDn(_ as Name, Contact.class) >> contact
+
+        when:
+        ldapService.updateEntry(entry1)
+        def entry3 = ldapService.getEntry("cn=test1,o=fint.no", Contact.class)
+
+        then:
+        entry3.firstName == "Changed"
+        1 * ldapTemplate.findByDn(_ as Name, Contact.class) >> entry1
+    }
+
+    def "Get All is invalidated when an entry below the base is written"() {
+        when:
+        ldapService.getAll("ou=contacts,o=fint", Contact.class)
+        ldapService.getAll("ou=contacts,o=fint", Contact.class)
+
+        then:
+        1 * ldapTemplate.findAll(_ as Name, _ as SearchControls, Contact.class) >> [new Contact()]
+
+        when:
+        ldapService.deleteEntry(new Contact(dn: "cn=test1,ou=contacts,o=fint"))
+        def all = ldapService.getAll("ou=contacts,o=fint", Contact.class)
+
+        then:
+        all.isEmpty()
+        1 * ldapTemplate.findAll(_ as Name, _ as SearchControls, Contact.class) >> []
+    }
+
+    def "Update memberships sends only the added and removed values"() {
+        given:
+        def component = new Component(dn: "ou=comp1,o=fint")
+        component.clients = ["cn=c1,o=fint", "cn=c2,o=fint"]
+        component.addClient("cn=c3,o=fint")
+        component.removeClient("CN=c1,o=fint")
+
+        when:
+        def updated = ldapService.updateMemberships(component)
+
+        then:
+        updated
+        component.membershipChanges.isEmpty()
+        0 * ldapTemplate.update(_)
+        1 * ldapTemplate.modifyAttributes(_ as Name, _ as ModificationItem[]) >> { Name dn, ModificationItem[] items ->
+            assert items.size() == 2
+            assert items[0].modificationOp == DirContext.REMOVE_ATTRIBUTE
+            assert items[0].attribute.get() == "cn=c1,o=fint"
+            assert items[1].modificationOp == DirContext.ADD_ATTRIBUTE
+            assert items[1].attribute.get() == "cn=c3,o=fint"
+        }
+    }
+
+    def "Update memberships applies values one by one when the directory has diverged"() {
+        given:
+        def component = new Component(dn: "ou=comp1,o=fint")
+        component.addClient("cn=c1,o=fint")
+        component.addClient("cn=c2,o=fint")
+
+        when:
+        def updated = ldapService.updateMemberships(component)
+
+        then:
+        updated
+        3 * ldapTemplate.modifyAttributes(_ as Name, _ as ModificationItem[]) >>
+                { throw new AttributeInUseException(new javax.naming.directory.AttributeInUseException("test")) } >>
+                { throw new AttributeInUseException(new javax.naming.directory.AttributeInUseException("test")) } >>
+                {}
+    }
+
     def "Delete Entry"() {
         when:
         ldapService.deleteEntry(new Contact())
@@ -111,4 +263,146 @@ class LdapServiceSpec extends Specification {
         then:
         1 * ldapTemplate.delete(_ as Contact)
     }
+
+    def "Directory calls are timed by operation, type and outcome"() {
+        given:
+        def contact = new Contact(dn: "name=test1,o=fint.no", firstName: "Ole", lastName: "Olsen")
+
+        when:
+        ldapService.createEntry(contact)
+        ldapService.createEntry(contact)
+        ldapService.getAll("o=fint", Contact.class)
+
+        then:
+        2 * ldapTemplate.create(_ as Contact) >> {} >> { throw new NameAlreadyBoundException(new javax.naming.NameAlreadyBoundException("test")) }
+        1 * ldapTemplate.findAll(_ as Name, _ as SearchControls, Contact.class) >> [new Contact(), new Contact()]
+        meterRegistry.get("ldap.operations").tags("operation", "create", "type", "Contact", "outcome", "success").timer().count() == 1
+        meterRegistry.get("ldap.operations").tags("operation", "create", "type", "Contact", "outcome", "already_exists").timer().count() == 1
+        meterRegistry.get("ldap.operations").tags("operation", "search", "type", "Contact").timer().count() == 1
+        meterRegistry.get("ldap.search.results").tags("type", "Contact").summary().totalAmount() == 2
+    }
+
+    def "Delete Subtree uses the subtree delete control when the directory supports it"() {
+        when:
+        ldapService.deleteSubtree("ou=test_no,ou=org,o=fint")
+
+        then:
+        1 * ldapTemplate.executeReadOnly(_ as ContextExecutor) >> true
+        1 * ldapTemplate.executeReadWrite(_ as ContextExecutor)
+        0 * ldapTemplate.unbind(_)
+    }
+
+    def "Delete Subtree deletes leaf-first when the control is not used"() {
+        given:
+        def organisation = LdapUtils.newLdapName("ou=test_no,ou=org,o=fint")
+        def clients = LdapUtils.newLdapName("ou=clients,ou=test_no,ou=org,o=fint")
+        def client1 = LdapUtils.newLdapName("cn=client1,ou=clients,ou=test_no,ou=org,o=fint")
+        def client2 = LdapUtils.newLdapName("cn=client2,ou=clients,ou=test_no,ou=org,o=fint")
+        def service = Spy(LdapService)
+        service.ldapTemplate = ldapTemplate
+        service.entryCache = new LdapEntryCache(100, 100, Duration.ofMinutes(1), new SimpleMeterRegistry())
+        service.metrics = new LdapMetrics(meterRegistry)
+        service.directoryGraph = Stub(DirectoryGraphService)
+        service.subtreeDeleteControl = false
+
+        when:
+        service.deleteSubtree(organisation.toString())
+
+        then:
+        1 * service.findSubtreeNames(organisation) >> [organisation, clients, client1, client2]
+        0 * ldapTemplate.executeReadWrite(_)
+
+        then:
+        1 * ldapTemplate.unbind(client1)
+        1 * ldapTemplate.unbind(client2) >> { throw new NameNotFoundException("test") }
+
+        then:
+        1 * ldapTemplate.unbind(clients)
+
+        then:
+        1 * ldapTemplate.unbind(organisation)
+    }
+
+    def "Delete Subtree finishes the level of a failed delete and reports what remains"() {
+        given:
+        def organisation = LdapUtils.newLdapName("ou=test_no,ou=org,o=fint")
+        def clients = LdapUtils.newLdapName("ou=clients,ou=test_no,ou=org,o=fint")
+        def client1 = LdapUtils.newLdapName("cn=client1,ou=clients,ou=test_no,ou=org,o=fint")
+        def client2 = LdapUtils.newLdapName("cn=client2,ou=clients,ou=test_no,ou=org,o=fint")
+        def service = Spy(LdapService)
+        service.ldapTemplate = ldapTemplate
+        service.entryCache = new LdapEntryCache(100, 100, Duration.ofMinutes(1), new SimpleMeterRegistry())
+        service.metrics = new LdapMetrics(meterRegistry)
+        service.directoryGraph = Stub(DirectoryGraphService)
+        service.subtreeDeleteControl = false
+
+        when:
+        service.deleteSubtree(organisation.toString())
+
+        then:
+        1 * service.findSubtreeNames(organisation) >> [organisation, clients, client1, client2]
+        1 * ldapTemplate.unbind(client1) >> { throw new RuntimeException("busy") }
+        1 * ldapTemplate.unbind(client2)
+        0 * ldapTemplate.unbind(clients)
+        0 * ldapTemplate.unbind(organisation)
+        def e = thrown(UpdateEntityException)
+        e.message.contains("1 of 4 deleted and 3 remaining")
+    }
+
+    def "Updates read the entry they modify from the master when reads go to replicas"() {
+        given:
+        def master = Mock(InstrumentedPooledContextSource)
+        def replica = Mock(InstrumentedPooledContextSource)
+        def readYourWrites = new ReadYourWrites("ldap://replica", Duration.ofMinutes(1))
+        def dirContext = Mock(DirContext)
+        def service = new LdapService(
+                ldapTemplate: new LdapTemplate(new ReplicaRoutingContextSource(master, [replica], readYourWrites)),
+                entryCache: new LdapEntryCache(100, 100, Duration.ofMinutes(1), new SimpleMeterRegistry()),
+                metrics: new LdapMetrics(meterRegistry),
+                directoryGraph: Stub(DirectoryGraphService),
+                readYourWrites: readYourWrites,
+                writeMode: LdapWriteMode.CHECK_EXISTS
+        )
+        def contact = new Contact(dn: "cn=test1,ou=contacts,o=fint", firstName: "Ole", lastName: "Olsen")
+        def existing = new DirContextAdapter(new BasicAttributes(true), LdapUtils.newLdapName(contact.dn))
+        existing.updateMode = true
+        def found = Mock(NamingEnumeration)
+
+        when:
+        def updated = service.updateEntry(contact)
+
+        then:
+        updated
+        2 * master.getReadOnlyContext() >> dirContext
+        0 * replica.getReadOnlyContext()
+        1 * dirContext.search(_ as Name, _ as String, _ as SearchControls) >> found
+        _ * found.hasMore() >>> [true, false]
+        1 * found.next() >> new SearchResult(contact.dn, existing, new BasicAttributes(true))
+        1 * dirContext.lookup(_ as Name) >> existing
+        1 * master.getReadWriteContext() >> dirContext
+        1 * dirContext.modifyAttributes(_ as Name, _ as ModificationItem[])
+    }
+
+    def "Subtrees to delete are listed on the master when reads go to replicas"() {
+        given:
+        def master = Mock(InstrumentedPooledContextSource)
+        def replica = Mock(InstrumentedPooledContextSource)
+        def readYourWrites = new ReadYourWrites("ldap://replica", Duration.ofMinutes(1))
+        def ldapContext = Mock(LdapContext)
+        def service = new LdapService(
+                ldapTemplate: new LdapTemplate(new ReplicaRoutingContextSource(master, [replica], readYourWrites)),
+                readYourWrites: readYourWrites
+        )
+        def found = Mock(NamingEnumeration)
+
+        when:
+        def names = service.findSubtreeNames(LdapUtils.newLdapName("ou=org,o=fint"))
+
+        then:
+        names.isEmpty()
+        1 * master.getReadOnlyContext() >> ldapContext
+        0 * replica.getReadOnlyContext()
+        1 * ldapContext.search(_ as Name, _ as String, _ as SearchControls) >> found
+        _ * found.hasMore() >> false
+    }
 }
@@ -0,0 +1,46 @@
+package no.fintlabs.portal.ldap
+
+import spock.lang.Specification
+
+import javax.naming.ldap.BasicControl
+
+class PersistentSearchSpec extends Specification {
+
+    def "Request control asks for all change types with entry change notifications"() {
+        when:
+        def control = PersistentSearch.requestControl()
+
+        then:
+        control.ID == "2.16.840.1.113730.3.4.3"
+        control.critical
+        control.encodedValue == [0x30, 0x09, 0x02, 0x01, 0x0F, 0x01, 0x01, 0xFF, 0x01, 0x01, 0xFF] as byte[]
+    }
+
+    def "Entry change notification is decoded"() {
+        given:
+        def previousDn = "ou=old,o=fint".bytes
+        def value = ([0x30, 5 + previousDn.length, 0x0A, 0x01, 0x08, 0x04, previousDn.length] + previousDn.toList()) as byte[]
+        def controls = [new BasicControl(PersistentSearch.ENTRY_CHANGE_CONTROL, false, value)] as BasicControl[]
+
+        when:
+        def change = PersistentSearch.entryChange(controls)
+
+        then:
+        change.changeType == PersistentSearch.MOD_DN
+        change.previousDn == "ou=old,o=fint"
+    }
+
+    def "Entry change notification without previous DN"() {
+        expect:
+        PersistentSearch.decode([0x30, 0x03, 0x0A, 0x01, 0x02] as byte[]) == new PersistentSearch.EntryChange(PersistentSearch.DELETE, null)
+        PersistentSearch.entryChange(null) == null
+    }
+
+    def "Truncated notification is rejected"() {
+        when:
+        PersistentSearch.decode([0x30, 0x03, 0x0A] as byte[])
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,85 @@
+package no.fintlabs.portal.ldap
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import no.fintlabs.portal.model.organisation.Organisation
+import no.fintlabs.portal.testutils.ObjectFactory
+import reactor.core.publisher.Flux
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class ReactiveLdapServiceSpec extends Specification {
+
+    private ldapService
+    private readYourWrites
+    private meterRegistry
+    private reactiveLdapService
+
+    def setup() {
+        ldapService = Mock(LdapService)
+        readYourWrites = new ReadYourWrites("ldap://replica", Duration.ofMinutes(1))
+        meterRegistry = new SimpleMeterRegistry()
+        reactiveLdapService = new ReactiveLdapService(ldapService, readYourWrites, 2, 10, meterRegistry)
+    }
+
+    def cleanup() {
+        reactiveLdapService.destroy()
+    }
+
+    def "Calls run on the LDAP scheduler"() {
+        given:
+        def threads = []
+
+        when:
+        def organisation = reactiveLdapService.getEntry("ou=test,o=fint", Organisation).block()
+        def missing = reactiveLdapService.getAll("ou=missing,o=fint", Organisation).collectList().block()
+
+        then:
+        organisation != null
+        missing.isEmpty()
+        1 * ldapService.getEntry("ou=test,o=fint", Organisation) >> {
+            threads << Thread.currentThread().name
+            ObjectFactory.newOrganisation()
+        }
+        1 * ldapService.getAll("ou=missing,o=fint", Organisation) >> null
+        threads.every { it.startsWith("ldap-") }
+        meterRegistry.find("executor.completed").tag("name", "ldap").functionCounter() != null
+    }
+
+    def "Calls run concurrently up to the number of threads"() {
+        given:
+        def started = new CountDownLatch(2)
+        def release = new CountDownLatch(1)
+        ldapService.getEntry(_ as String, Organisation) >> {
+            started.countDown()
+            release.await(5, TimeUnit.SECONDS)
+            ObjectFactory.newOrganisation()
+        }
+
+        when:
+        def results = Flux.range(0, 2)
+                .flatMap { reactiveLdapService.getEntry("ou=org" + it + ",o=fint", Organisation) }
+                .collectList()
+                .toFuture()
+        def concurrent = started.await(5, TimeUnit.SECONDS)
+        release.countDown()
+
+        then:
+        concurrent
+        results.get(5, TimeUnit.SECONDS).size() == 2
+    }
+
+    def "A write on the subscribing thread is carried over to the LDAP scheduler"() {
+        given:
+        def withinWindow = null
+        readYourWrites.written()
+
+        when:
+        reactiveLdapService.execute { withinWindow = readYourWrites.isWithinWindow() }.block()
+
+        then:
+        withinWindow
+    }
+}
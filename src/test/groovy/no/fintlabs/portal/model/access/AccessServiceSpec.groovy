@@ -1,5 +1,6 @@
 package no.fintlabs.portal.model.access
 
+import no.fintlabs.portal.ldap.DirectoryGraphService
 import no.fintlabs.portal.ldap.LdapService
 import no.fintlabs.portal.model.asset.AssetService
 import no.fintlabs.portal.model.client.Client
@@ -29,7 +30,8 @@ class AccessServiceSpec extends Specification {
                 clientObjectService: clientObjectService,
                 ldapService: ldapService,
                 namOAuthClientService: oauthService,
-                assetService: assetService
+                assetService: assetService,
+                directoryGraph: Stub(DirectoryGraphService)
         )
         accessObjectService = new AccessObjectService(organisationBase)
         accessService = new AccessService(
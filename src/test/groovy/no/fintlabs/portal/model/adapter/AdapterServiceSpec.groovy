@@ -1,11 +1,14 @@
 package no.fintlabs.portal.model.adapter
 
+import no.fintlabs.portal.ldap.DirectoryGraphService
 import no.fintlabs.portal.ldap.LdapService
+import no.fintlabs.portal.ldap.ReactiveLdapService
 import no.fintlabs.portal.model.asset.AssetService
 import no.fintlabs.portal.model.organisation.Organisation
 import no.fintlabs.portal.oauth.NamOAuthClientService
 import no.fintlabs.portal.oauth.OAuthClient
 import no.fintlabs.portal.testutils.ObjectFactory
+import reactor.core.publisher.Mono
 import spock.lang.Specification
 
 class AdapterServiceSpec extends Specification {
@@ -15,6 +18,7 @@ class AdapterServiceSpec extends Specification {
     private adapterObjectService
     private oauthService
     private assetService
+    private reactiveLdapService
 
     def setup() {
         def organisationBase = "ou=org,o=fint"
@@ -22,11 +26,14 @@ class AdapterServiceSpec extends Specification {
         assetService = Mock(AssetService)
         adapterObjectService = new AdapterObjectService(organisationBase: organisationBase)
         oauthService = Mock(NamOAuthClientService)
+        reactiveLdapService = Mock(ReactiveLdapService)
         adapterService = new AdapterService(
                 adapterObjectService: adapterObjectService,
                 ldapService: ldapService,
+                reactiveLdapService: reactiveLdapService,
                 namOAuthClientService: oauthService,
-                assetService: assetService
+                assetService: assetService,
+                directoryGraph: Stub(DirectoryGraphService)
         )
 
     }
@@ -66,6 +73,15 @@ class AdapterServiceSpec extends Specification {
         //1 * oauthService.getOAuthClient(_ as String) >> ObjectFactory.newOAuthClient()
     }
 
+    def "Find Adapter"() {
+        when:
+        def adapter = adapterService.findAdapter("adapter", "orgName").blockOptional()
+
+        then:
+        adapter.isPresent()
+        1 * reactiveLdapService.getEntry("cn=adapter,ou=adapters,ou=orgName,ou=org,o=fint", Adapter) >> Mono.just(ObjectFactory.newAdapter())
+    }
+
     def "Update Adapter"() {
         when:
         def updated = adapterService.updateAdapter(ObjectFactory.newAdapter())
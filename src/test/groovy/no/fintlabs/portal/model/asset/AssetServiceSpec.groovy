@@ -5,6 +5,7 @@ import no.fintlabs.portal.ldap.LdapService
 import no.fintlabs.portal.model.adapter.Adapter
 import no.fintlabs.portal.model.client.Client
 import no.fintlabs.portal.testutils.ObjectFactory
+import org.springframework.ldap.filter.Filter
 import spock.lang.Specification
 
 class AssetServiceSpec extends Specification {
@@ -14,7 +15,7 @@ class AssetServiceSpec extends Specification {
 
     def setup() {
         ldapService = Mock(LdapService)
-        assetService = new AssetService(ldapService: ldapService)
+        assetService = new AssetService(ldapService: ldapService, organisationBase: "ou=org,o=fint")
     }
 
     def "Add Sub Asset"() {
@@ -99,6 +100,25 @@ class AssetServiceSpec extends Specification {
         1 * ldapService.getAll(_ as String, _ as Class) >> Arrays.asList(ObjectFactory.newAsset(), ObjectFactory.newAsset())
     }
 
+    def "Stream Assets searches once per chunk of organisations"() {
+        given:
+        def organisations = (0..<250).collect { "ou=org" + it + ",ou=org,o=fint" }
+        def filters = []
+
+        when:
+        def assets = assetService.streamAssets(organisations).collectList().block()
+
+        then:
+        assets.size() == 3
+        2 * ldapService.getAll("ou=org,o=fint", Asset, _ as Filter) >> { base, type, filter ->
+            filters << filter.encode()
+            filters.size() == 1 ? [ObjectFactory.newAsset(), ObjectFactory.newAsset()] : [ObjectFactory.newAsset()]
+        }
+        filters[0].startsWith("(|(fintAssetOrganisation=ou=org0,ou=org,o=fint)")
+        filters[0].count("fintAssetOrganisation=") == 200
+        filters[1].count("fintAssetOrganisation=") == 50
+    }
+
     def "Link Client to Asset"() {
         given:
         def asset = ObjectFactory.newAsset()
@@ -112,7 +132,7 @@ class AssetServiceSpec extends Specification {
         then:
         asset.clients.any { it.contains('xyzzy')}
         client.assetId == 'test.no'
-        1 * ldapService.updateEntry(_ as Asset) >> true
+        1 * ldapService.updateMemberships(_ as Asset) >> true
         1 * ldapService.updateEntry(_ as Client) >> true
     }
 
@@ -135,7 +155,7 @@ class AssetServiceSpec extends Specification {
         asset.clients.any { it.contains('abcabc')}
         client2.assetId == 'test.no'
         client1.assetId == null
-        1 * ldapService.updateEntry(_ as Asset) >> true
+        1 * ldapService.updateMemberships(_ as Asset) >> true
         1 * ldapService.updateEntry(_ as Client) >> true
 
     }
@@ -154,8 +174,8 @@ class AssetServiceSpec extends Specification {
         then:
         asset.adapters.any { it.contains('xyzzy')}
         adapter.assets.any { it =~ /test_no/ }
-        1 * ldapService.updateEntry(_ as Asset) >> true
-        1 * ldapService.updateEntry(_ as Adapter) >> true
+        1 * ldapService.updateMemberships(_ as Asset) >> true
+        1 * ldapService.updateMemberships(_ as Adapter) >> true
     }
 
     def "Unlink Adapter from Asset"() {
@@ -176,8 +196,8 @@ class AssetServiceSpec extends Specification {
         asset.adapters.any { it.contains('abcabc')}
         adapter1.assets.isEmpty()
         adapter2.assets.any { it =~ /test_no/ }
-        1 * ldapService.updateEntry(_ as Asset) >> true
-        1 * ldapService.updateEntry(_ as Adapter) >> true
+        1 * ldapService.updateMemberships(_ as Asset) >> true
+        1 * ldapService.updateMemberships(_ as Adapter) >> true
     }
 
 }
@@ -0,0 +1,36 @@
+package no.fintlabs.portal.model.client
+
+import no.fintlabs.portal.testutils.ObjectFactory
+import spock.lang.Specification
+
+import java.time.Duration
+
+class ClientRequestBatchSpec extends Specification {
+
+    def "Lookups are done once per batch"() {
+        given:
+        def batch = new ClientRequestBatch()
+        def loader = Mock(java.util.function.Function)
+
+        when:
+        def organisation1 = batch.getOrganisation("testOrg", loader)
+        def organisation2 = batch.getOrganisation("testOrg", loader)
+
+        then:
+        organisation1.is(organisation2)
+        1 * loader.apply("testOrg") >> Optional.of(ObjectFactory.newOrganisation())
+    }
+
+    def "Batch is complete when full or too old"() {
+        given:
+        def batch = new ClientRequestBatch()
+
+        when:
+        batch.addRequest()
+
+        then:
+        !batch.isComplete(2, Duration.ofMinutes(1))
+        batch.isComplete(1, Duration.ofMinutes(1))
+        batch.isComplete(2, Duration.ZERO)
+    }
+}
@@ -1,10 +1,13 @@
 package no.fintlabs.portal.model.client
 
+import no.fintlabs.portal.ldap.DirectoryGraph
+import no.fintlabs.portal.ldap.DirectoryGraphService
 import no.fintlabs.portal.ldap.LdapService
 import no.fintlabs.portal.model.asset.AssetService
 import no.fintlabs.portal.model.organisation.Organisation
 import no.fintlabs.portal.oauth.NamOAuthClientService
 import no.fintlabs.portal.oauth.OAuthClient
+import no.fintlabs.portal.oauth.OAuthClientRegistration
 import no.fintlabs.portal.testutils.ObjectFactory
 import spock.lang.Specification
 
@@ -27,7 +30,8 @@ class ClientServiceSpec extends Specification {
                 clientObjectService: clientObjectService,
                 ldapService: ldapService,
                 namOAuthClientService: oauthService,
-                assetService: assetService
+                assetService: assetService,
+                directoryGraph: Stub(DirectoryGraphService)
         )
     }
 
@@ -46,6 +50,49 @@ class ClientServiceSpec extends Specification {
         1 * oauthService.addOAuthClient(_ as String) >> new OAuthClient()
     }
 
+    def "Add Clients registers the OAuth clients in bulk"() {
+        given:
+        def client1 = ObjectFactory.newClient()
+        def client2 = ObjectFactory.newClient()
+        client2.name = "OtherClient"
+        def organisation = new Organisation(name: "name", primaryAssetId: "test.no")
+
+        when:
+        def added = clientService.addClients([client1, client2], organisation)
+
+        then:
+        added == [client1]
+        client1.clientId == "id1"
+        1 * oauthService.addOAuthClients(["c_TestClient_client_test_no", "c_OtherClient_client_test_no"]) >> [
+                OAuthClientRegistration.successful("c_TestClient_client_test_no", new OAuthClient(clientId: "id1")),
+                OAuthClientRegistration.failed("c_OtherClient_client_test_no", new RuntimeException("429"))
+        ]
+        0 * oauthService.addOAuthClient(_)
+        1 * ldapService.createEntry(client1) >> true
+        1 * assetService.getPrimaryAsset(organisation) >> ObjectFactory.newAsset()
+        1 * assetService.linkClientToAsset(_, client1)
+    }
+
+    def "Add Clients leaves out clients whose OAuth client names collide"() {
+        given:
+        def client1 = ObjectFactory.newClient()
+        client1.name = "Test.Client"
+        def client2 = ObjectFactory.newClient()
+        client2.name = "Test_Client"
+        def organisation = new Organisation(name: "name", primaryAssetId: "test.no")
+
+        when:
+        def added = clientService.addClients([client1, client2], organisation)
+
+        then:
+        added == [client1]
+        1 * oauthService.addOAuthClients(["c_Test_Client_client_test_no"]) >> [
+                OAuthClientRegistration.successful("c_Test_Client_client_test_no", new OAuthClient(clientId: "id1"))
+        ]
+        1 * ldapService.createEntry(client1) >> true
+        0 * ldapService.createEntry(client2)
+    }
+
     def "Get Clients"() {
         when:
         def clients = clientService.getClients("orgName")
@@ -56,6 +103,22 @@ class ClientServiceSpec extends Specification {
         //2 * oauthService.getOAuthClient(_ as String) >> ObjectFactory.newOAuthClient()
     }
 
+    def "Get Clients reads from the directory graph when it is loaded"() {
+        given:
+        def client = ObjectFactory.newClient()
+        client.dn = "cn=TestClient,ou=clients,ou=orgName,ou=org,o=fint"
+        def directoryGraph = Mock(DirectoryGraphService)
+        clientService.directoryGraph = directoryGraph
+
+        when:
+        def clients = clientService.getClients("orgName")
+
+        then:
+        clients*.name == ["TestClient"]
+        1 * directoryGraph.current(*_) >> Optional.of(DirectoryGraph.of([DirectoryGraph.Node.of(client.dn, client, [:])]))
+        0 * ldapService.getAll(_, _)
+    }
+
     def "Get Client"() {
         when:
         def client = clientService.getClient(UUID.randomUUID().toString(), UUID.randomUUID().toString())
@@ -1,9 +1,12 @@
 package no.fintlabs.portal.model.component
 
+import no.fintlabs.portal.ldap.DirectoryGraph
+import no.fintlabs.portal.ldap.DirectoryGraphService
 import no.fintlabs.portal.ldap.LdapService
 import no.fintlabs.portal.model.asset.AssetService
 import no.fintlabs.portal.model.organisation.OrganisationService
 import no.fintlabs.portal.testutils.ObjectFactory
+import reactor.core.publisher.Flux
 import spock.lang.Specification
 
 class ComponentServiceSpec extends Specification {
@@ -25,6 +28,7 @@ class ComponentServiceSpec extends Specification {
                 componentObjectService: componentObjectService,
                 organisationService: organisationService,
                 assetService: assetService,
+                directoryGraph: Stub(DirectoryGraphService)
         )
     }
 
@@ -106,7 +110,7 @@ class ComponentServiceSpec extends Specification {
 
         then:
         component.getClients().size() == 1
-        1 * ldapService.updateEntry(_ as Component)
+        1 * ldapService.updateMemberships(_ as Component)
     }
 
     def "Remove Client from Component"() {
@@ -126,7 +130,33 @@ class ComponentServiceSpec extends Specification {
         then:
         component.getClients().size() == 1
         component.getClients().get(0) == "name=c2,o=fint"
-        1 * ldapService.updateEntry(_ as Component)
+        1 * ldapService.updateMemberships(_ as Component)
+    }
+
+    def "Set Client Components writes only the changed components"() {
+        given:
+        def client = ObjectFactory.newClient()
+        def component1 = ObjectFactory.newComponent()
+        def component2 = ObjectFactory.newComponent()
+
+        client.setDn("name=c1")
+        component1.setDn("ou=comp1")
+        component2.setDn("ou=comp2")
+        client.addComponent("ou=comp1")
+        client.getMembershipChanges().clear()
+        component1.setClients(["name=c1"])
+
+        when:
+        componentService.setClientComponents(client, [component1], [component2])
+
+        then:
+        client.getComponents() == ["ou=comp2"]
+        component1.getClients().isEmpty()
+        component2.getClients() == ["name=c1"]
+        1 * ldapService.updateMemberships(component1)
+        1 * ldapService.updateMemberships(component2)
+        0 * ldapService.updateMemberships(client)
+        !client.getMembershipChanges().isEmpty()
     }
 
     def "Add Adapter to Component"() {
@@ -142,7 +172,7 @@ class ComponentServiceSpec extends Specification {
 
         then:
         component.getAdapters().size() == 1
-        1 * ldapService.updateEntry(_ as Component)
+        1 * ldapService.updateMemberships(_ as Component)
     }
 
     def "Remove Adapter from Component"() {
@@ -162,24 +192,42 @@ class ComponentServiceSpec extends Specification {
         then:
         component.getAdapters().size() == 1
         component.getAdapters().get(0) == "name=a2,o=fint"
-        1 * ldapService.updateEntry(_ as Component)
+        1 * ldapService.updateMemberships(_ as Component)
     }
 
     def "Get Active Assets for Component"() {
         given:
         def component = ObjectFactory.newComponent()
-        def org = ObjectFactory.newOrganisation()
         def ass = ObjectFactory.newAsset()
         component.organisations = [ 'ou=testOrg,ou=org,o=fint' ]
 
         when:
         def assets = componentService.getActiveAssetsForComponent(component)
-        println(assets)
 
         then:
-        assets.size() == 1
-        1 * organisationService.getOrganisationByDn('ou=testOrg,ou=org,o=fint') >> Optional.of(org)
-        1 * assetService.getAssets(org) >> [ ass ]
+        assets == [ ass ]
+        1 * assetService.streamAssets([ 'ou=testOrg,ou=org,o=fint' ]) >> Flux.just(ass)
+        0 * organisationService.getOrganisationByDn(_)
+        0 * assetService.getAssets(_)
+    }
+
+    def "Get Active Assets for Component from the directory graph"() {
+        given:
+        def component = ObjectFactory.newComponent()
+        def ass = ObjectFactory.newAsset()
+        ass.dn = 'ou=test_no,ou=assets,ou=testOrg,ou=org,o=fint'
+        component.organisations = [ 'ou=testOrg,ou=org,o=fint' ]
+        def directoryGraph = Mock(DirectoryGraphService)
+        componentService.directoryGraph = directoryGraph
+        def graph = DirectoryGraph.of([DirectoryGraph.Node.of(ass.dn, ass, [fintAssetOrganisation: component.organisations])])
+
+        when:
+        def assets = componentService.getActiveAssetsForComponent(component)
+
+        then:
+        assets*.dn == [ ass.dn ]
+        1 * directoryGraph.current(*_) >> Optional.of(graph)
+        0 * assetService.streamAssets(_)
     }
 
 }
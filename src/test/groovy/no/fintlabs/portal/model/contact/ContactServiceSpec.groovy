@@ -2,6 +2,7 @@ package no.fintlabs.portal.model.contact
 
 import no.fintlabs.portal.ldap.LdapService
 import no.fintlabs.portal.testutils.ObjectFactory
+import reactor.core.publisher.Flux
 import spock.lang.Specification
 
 class ContactServiceSpec extends Specification {
@@ -18,13 +19,32 @@ class ContactServiceSpec extends Specification {
 
     }
 
-    def "Get All Contacts"() {
+    def "Stream All Contacts"() {
         when:
-        def contacts = contactService.getContacts()
+        def contacts = contactService.streamContacts().collectList().block()
 
         then:
         contacts.size() == 2
-        1 * ldapService.getAll(_ as String, _ as Class) >> Arrays.asList(ObjectFactory.newContact("11111111111"), ObjectFactory.newContact("22222222222"))
+        1 * ldapService.getAllPaged("ou=contacts,o=fint", Contact.class) >> Flux.just(ObjectFactory.newContact("11111111111"), ObjectFactory.newContact("22222222222"))
+        0 * ldapService.getAll(_ as String, _ as Class)
+    }
+
+    def "Get Technical Contacts"() {
+        when:
+        def contacts = contactService.getTechnicalContacts("ou=testOrg,ou=org,o=fint")
+
+        then:
+        contacts.size() == 1
+        1 * ldapService.getAll("ou=contacts,o=fint", Contact.class, { it.encode() == "(fintContactTechnical=ou=testOrg,ou=org,o=fint)" }) >> [ObjectFactory.newContact("11111111111")]
+    }
+
+    def "Get Legal Contacts"() {
+        when:
+        def contacts = contactService.getLegalContacts("ou=testOrg,ou=org,o=fint")
+
+        then:
+        contacts.isEmpty()
+        1 * ldapService.getAll("ou=contacts,o=fint", Contact.class, { it.encode() == "(fintContactLegal=ou=testOrg,ou=org,o=fint)" }) >> null
     }
 
     def "Add Contact"() {
@@ -1,10 +1,11 @@
 package no.fintlabs.portal.model.organisation
 
-import no.fintlabs.portal.ldap.Container
+import no.fintlabs.portal.ldap.DirectoryGraphService
 import no.fintlabs.portal.ldap.LdapService
 import no.fintlabs.portal.model.adapter.Adapter
 import no.fintlabs.portal.model.adapter.AdapterObjectService
 import no.fintlabs.portal.model.adapter.AdapterService
+import no.fintlabs.portal.model.asset.Asset
 import no.fintlabs.portal.model.asset.AssetService
 import no.fintlabs.portal.model.client.Client
 import no.fintlabs.portal.model.client.ClientObjectService
@@ -14,12 +15,14 @@ import no.fintlabs.portal.model.component.ComponentObjectService
 import no.fintlabs.portal.model.component.ComponentService
 import no.fintlabs.portal.model.contact.Contact
 import no.fintlabs.portal.model.contact.ContactService
+import no.fintlabs.portal.exceptions.UpdateEntityException
 import no.fintlabs.portal.oauth.NamOAuthClientService
+import no.fintlabs.portal.oauth.OAuthClientRemoval
 import no.fintlabs.portal.testutils.ObjectFactory
+import org.springframework.ldap.filter.Filter
+import reactor.core.publisher.Flux
 import spock.lang.Specification
 
-import java.util.stream.Collectors
-import java.util.stream.IntStream
 
 class OrganisationServiceSpec extends Specification {
     private organisationService
@@ -46,19 +49,22 @@ class OrganisationServiceSpec extends Specification {
                 adapterObjectService: adapterObjectService,
                 ldapService: ldapService,
                 namOAuthClientService: oauthService,
-                assetService: assetService
+                assetService: assetService,
+                directoryGraph: Stub(DirectoryGraphService)
         )
         clientService = new ClientService(
                 clientObjectService: clientObjectService,
                 ldapService: ldapService,
                 namOAuthClientService: oauthService,
-                assetService: assetService
+                assetService: assetService,
+                directoryGraph: Stub(DirectoryGraphService)
         )
         organisationObjectService = new OrganisationObjectService(organisationBase: organisationBase, ldapService: ldapService)
         componentService = new ComponentService(
                 componentBase: componentBase,
                 ldapService: ldapService,
                 componentObjectService: new ComponentObjectService(ldapService: ldapService),
+                directoryGraph: Stub(DirectoryGraphService)
         )
         organisationService = new OrganisationService(
                 organisationBase: organisationBase,
@@ -68,7 +74,8 @@ class OrganisationServiceSpec extends Specification {
                 adapterService: adapterService,
                 clientService: clientService,
                 componentService: componentService,
-                assetService: assetService
+                assetService: assetService,
+                namOAuthClientService: oauthService
         )
     }
 
@@ -83,7 +90,10 @@ class OrganisationServiceSpec extends Specification {
         created == true
         organisation.dn != null
         organisation.name != null
+        organisation.primaryAssetId == organisation.name.replace("_", ".")
+        organisation.primaryAsset.startsWith("ou=" + organisation.name + ",ou=assets,")
         1 * ldapService.createEntry(_ as Organisation) >> true
+        1 * ldapService.updateEntry(_ as Organisation) >> true
     }
 
     def "Update Organisation"() {
@@ -95,14 +105,20 @@ class OrganisationServiceSpec extends Specification {
         1 * ldapService.updateEntry(_ as Organisation) >> true
     }
 
-    def "Get All Organisations"() {
+    def "Stream All Organisations"() {
+        given:
+        def primaryAsset = ObjectFactory.newAsset()
+        primaryAsset.organisation = "OU=testOrg,ou=org,o=fint"
+
         when:
-        def organisations = organisationService.getOrganisations()
+        def organisations = organisationService.streamOrganisations().collectList().block()
 
         then:
         organisations.size() == 2
-        1 * ldapService.getAll(_ as String, _ as Class) >> Arrays.asList(ObjectFactory.newOrganisation(), ObjectFactory.newOrganisation())
-        2 * ldapService.getAll(_ as String, _ as Class) >> Arrays.asList(ObjectFactory.newAsset())
+        organisations.every { it.primaryAssetId == "test.no" }
+        1 * ldapService.getAllPaged(_ as String, Organisation.class) >> Flux.just(ObjectFactory.newOrganisation(), ObjectFactory.newOrganisation())
+        1 * ldapService.getAll(_ as String, Asset.class, _ as Filter) >> [primaryAsset]
+        0 * ldapService.getAll(_ as String, _ as Class)
     }
 
     def "Get Organisation"() {
@@ -116,6 +132,21 @@ class OrganisationServiceSpec extends Specification {
 
     }
 
+    def "Get Organisation with stored primary asset"() {
+        given:
+        def stored = ObjectFactory.newOrganisation()
+        stored.primaryAssetId = "test.no"
+        stored.primaryAsset = "ou=test_no,ou=assets,ou=testOrg,ou=org,o=fint"
+
+        when:
+        def organisation = organisationService.getOrganisation("jalla")
+
+        then:
+        organisation.get().primaryAssetId == "test.no"
+        1 * ldapService.getEntry(_ as String, _ as Class) >> stored
+        0 * ldapService.getAll(_ as String, _ as Class)
+    }
+
     def "Delete Organisation"() {
         given:
         def organisation = ObjectFactory.newOrganisation()
@@ -126,15 +157,27 @@ class OrganisationServiceSpec extends Specification {
         organisationService.deleteOrganisation(organisation)
 
         then:
-        1 * ldapService.deleteEntry(_ as Organisation)
-        2 * ldapService.deleteEntry(_ as Client)
-        2 * ldapService.deleteEntry(_ as Adapter)
-        3 * ldapService.deleteEntry(_ as Container)
-        //4 * oauthService.getOAuthClient(_ as String) >> ObjectFactory.newOAuthClient()
-        3 * ldapService.getAll(_ as String, _ as Class) >>
+        2 * ldapService.getAll(_ as String, _ as Class) >>
                 Arrays.asList(ObjectFactory.newAdapter(), ObjectFactory.newAdapter()) >>
-                Arrays.asList(ObjectFactory.newClient(), ObjectFactory.newClient()) >>
-                Arrays.asList(ObjectFactory.newAsset(), ObjectFactory.newAsset())
+                Arrays.asList(ObjectFactory.newClient(), ObjectFactory.newClient())
+        1 * oauthService.removeOAuthClients({ it.size() == 4 }) >> { args -> args[0].collect { OAuthClientRemoval.successful(it) } }
+        1 * ldapService.deleteSubtree(organisation.dn)
+        0 * ldapService.deleteEntry(_)
+    }
+
+    def "Delete Organisation keeps the organisation when OAuth clients can not be removed"() {
+        given:
+        def organisation = ObjectFactory.newOrganisation()
+        organisation.dn = "ou=test_no,ou=org,o=fint"
+
+        when:
+        organisationService.deleteOrganisation(organisation)
+
+        then:
+        thrown(UpdateEntityException)
+        2 * ldapService.getAll(_ as String, _ as Class) >> [ObjectFactory.newAdapter()] >> [ObjectFactory.newClient()]
+        1 * oauthService.removeOAuthClients(_ as List) >> [OAuthClientRemoval.successful("123"), new OAuthClientRemoval("123", "Service Unavailable")]
+        0 * ldapService.deleteSubtree(_)
     }
 
 
@@ -151,8 +194,8 @@ class OrganisationServiceSpec extends Specification {
 
         then:
         organisation.getComponents().size() == 1
-        1 * ldapService.updateEntry(_ as Organisation)
-        1 * ldapService.updateEntry(_ as Component)
+        1 * ldapService.updateMemberships(_ as Organisation)
+        1 * ldapService.updateMemberships(_ as Component)
     }
 
     def "Remove component from organisation"() {
@@ -161,23 +204,41 @@ class OrganisationServiceSpec extends Specification {
         def comp1 = ObjectFactory.newComponent()
         def comp2 = ObjectFactory.newComponent()
 
+        def linkedClient = ObjectFactory.newClient()
+        def otherClient = ObjectFactory.newClient()
+        def linkedAdapter = ObjectFactory.newAdapter()
+
         comp1.setDn("ou=comp1,o=fint")
         comp2.setDn("ou=comp2,o=fint")
         organisation.addComponent("ou=comp1,o=fint")
         organisation.addComponent("ou=comp2,o=fint")
+        linkedClient.setDn("cn=linked,ou=clients,ou=org,o=fint")
+        otherClient.setDn("cn=other,ou=clients,ou=org,o=fint")
+        linkedAdapter.setDn("cn=linked,ou=adapters,ou=org,o=fint")
+        linkedClient.addComponent("OU=comp1, o=fint")
+        otherClient.addComponent("ou=comp2,o=fint")
+        linkedAdapter.addComponent("ou=comp1,o=fint")
+        comp1.addClient(linkedClient.getDn())
+        comp1.addAdapter(linkedAdapter.getDn())
+        [organisation, comp1, linkedClient, otherClient, linkedAdapter]*.getMembershipChanges()*.clear()
 
         when:
         organisationService.unLinkComponent(organisation, comp1)
 
         then:
-        organisation.getComponents().size() == 1
-        organisation.getComponents().get(0) == "ou=comp2,o=fint"
-        1 * ldapService.getAll(_ as String, _ as Class<List<Client>>) >> Arrays.asList(ObjectFactory.newClient())
-        1 * ldapService.getAll(_ as String, _ as Class<List<Adapter>>) >> Arrays.asList(ObjectFactory.newAdapter())
-        1 * ldapService.updateEntry(_ as Organisation)
-        3 * ldapService.updateEntry(_ as Component)
-
-
+        organisation.getComponents() == ["ou=comp2,o=fint"]
+        linkedClient.getComponents().isEmpty()
+        otherClient.getComponents() == ["ou=comp2,o=fint"]
+        linkedAdapter.getComponents().isEmpty()
+        comp1.getClients().isEmpty()
+        comp1.getAdapters().isEmpty()
+        1 * ldapService.getAll(_ as String, Client) >> [linkedClient, otherClient]
+        1 * ldapService.getAll(_ as String, Adapter) >> [linkedAdapter]
+        1 * ldapService.updateMemberships(linkedClient)
+        0 * ldapService.updateMemberships(otherClient)
+        1 * ldapService.updateMemberships(linkedAdapter)
+        1 * ldapService.updateMemberships(organisation)
+        1 * ldapService.updateMemberships(comp1)
     }
 
     def "Link Legal Contact"() {
@@ -226,7 +287,7 @@ class OrganisationServiceSpec extends Specification {
         organisation.legalContact == null
         contact.legal.isEmpty()
         1 * ldapService.updateEntry(_ as Organisation)
-        1 * ldapService.updateEntry(_ as Contact)
+        1 * ldapService.updateMemberships(_ as Contact)
     }
 
     def "Link Technical Contact"() {
@@ -240,8 +301,8 @@ class OrganisationServiceSpec extends Specification {
         then:
         organisation.techicalContacts.any { it == contact.dn }
         contact.technical.any { it == organisation.dn }
-        1 * ldapService.updateEntry(_ as Organisation)
-        1 * ldapService.updateEntry(_ as Contact)
+        1 * ldapService.updateMemberships(_ as Organisation)
+        1 * ldapService.updateMemberships(_ as Contact)
     }
 
     def "Unlink Technical Contact"() {
@@ -269,8 +330,8 @@ class OrganisationServiceSpec extends Specification {
         organisation.techicalContacts.every { it != contact2.dn }
         contact1.technical.any { it == organisation.dn }
         contact2.technical.isEmpty()
-        1 * ldapService.updateEntry(_ as Organisation)
-        1 * ldapService.updateEntry(_ as Contact)
+        1 * ldapService.updateMemberships(_ as Organisation)
+        1 * ldapService.updateMemberships(_ as Contact)
     }
 
     def "Get Legal Contact"() {
@@ -283,7 +344,8 @@ class OrganisationServiceSpec extends Specification {
 
         then:
         contact
-        1 * contactService.getContacts() >> IntStream.rangeClosed(1, 9).mapToObj(Integer.&toString).map{ def o = ObjectFactory.newContact("11111111111"); o.nin = it * 11; o.dn = "dn="+o.nin+",ou=contacts,o=fint"; o}.collect(Collectors.toList())
+        1 * contactService.getContactByDn("dn=11111111111,ou=contacts,o=fint") >> Optional.of(ObjectFactory.newContact("11111111111"))
+        0 * contactService.streamContacts()
     }
 
     def "Get Technical Contacts"() {
@@ -296,7 +358,8 @@ class OrganisationServiceSpec extends Specification {
 
         then:
         contacts.size() == 2
-        1 * contactService.getContacts() >> IntStream.rangeClosed(1, 9).mapToObj(Integer.&toString).map{ def o = ObjectFactory.newContact("11111111111"); o.nin = it * 11; o.dn = "dn="+o.nin+",ou=contacts,o=fint"; o}.collect(Collectors.toList())
+        1 * contactService.getTechnicalContacts(organisation.dn) >> [ObjectFactory.newContact("33333333333"), ObjectFactory.newContact("77777777777")]
+        0 * contactService.streamContacts()
     }
 
     def "When adding admin role, all other roles should be removed"() {
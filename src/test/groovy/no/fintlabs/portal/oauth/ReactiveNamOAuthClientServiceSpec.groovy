@@ -0,0 +1,138 @@
+package no.fintlabs.portal.oauth
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpMethod
+import org.springframework.http.HttpStatus
+import org.springframework.http.MediaType
+import org.springframework.web.reactive.function.client.ClientResponse
+import org.springframework.web.reactive.function.client.ExchangeFunction
+import org.springframework.web.reactive.function.client.WebClient
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+
+import java.time.Duration
+
+class ReactiveNamOAuthClientServiceSpec extends Specification {
+
+    private static final String TOKEN = "{\"access_token\":\"thetoken\",\"expires_in\":3600,\"token_type\":\"bearer\"}"
+    private static final String CLIENT = "{\"developerDn\":\"dev\",\"grant_types\":[\"password\"],\"application_type\":\"web\",\"Version\":\"4.1\",\"client_secret_expires_at\":1506509030813,\"registration_client_uri\":\"https://idp/nidp/oauth/nam/clients//9f30fa40-0178-4cbe-8cf5-e27c18a3ecbd\",\"redirect_uris\":[\"https://dummy.com\"],\"client_secret\":\"thesecret\",\"client_id_issued_at\":1506422630813,\"client_name\":\"80c66be1-a24a-4b55-84ab-8faeb775a85b\",\"client_id\":\"theid\",\"response_types\":[\"token\"]}"
+
+    private exchangeFunction
+    private namOAuthClientService
+
+    void setup() {
+        exchangeFunction = Mock(ExchangeFunction)
+        namOAuthClientService = new ReactiveNamOAuthClientService(
+                "username", "password", "idp", "clientId", "clientSecret",
+                10, Duration.ofSeconds(30), Duration.ofSeconds(10), Duration.ofSeconds(5), Duration.ofSeconds(15), Duration.ofSeconds(60),
+                WebClient.builder().exchangeFunction(exchangeFunction),
+                new OAuthClientCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry())
+        )
+    }
+
+    def "Add OAuth Client"() {
+        when:
+        def client = namOAuthClientService.addOAuthClient("name").block()
+
+        then:
+        client.clientId == "theid"
+        client.clientSecret == "thesecret"
+        1 * exchangeFunction.exchange({ it.url().path.endsWith("/token") }) >> json(TOKEN)
+        1 * exchangeFunction.exchange({
+            it.method() == HttpMethod.POST && it.url().path.endsWith("/clients/") && it.headers().getFirst(HttpHeaders.AUTHORIZATION) == "Bearer thetoken"
+        }) >> json(CLIENT)
+    }
+
+    def "Access token is shared by calls"() {
+        when:
+        namOAuthClientService.getOAuthClient("theid").block()
+        namOAuthClientService.getOAuthClient("otherid").block()
+
+        then:
+        1 * exchangeFunction.exchange({ it.url().path.endsWith("/token") }) >> json(TOKEN)
+        2 * exchangeFunction.exchange({ it.method() == HttpMethod.GET }) >> { json(CLIENT) }
+    }
+
+    def "Get OAuth Client is cached until the client is removed"() {
+        when:
+        namOAuthClientService.getOAuthClient("theid").block()
+        def client = namOAuthClientService.getOAuthClient("theid").block()
+
+        then:
+        client.clientSecret == "thesecret"
+        1 * exchangeFunction.exchange({ it.url().path.endsWith("/token") }) >> json(TOKEN)
+        1 * exchangeFunction.exchange({ it.method() == HttpMethod.GET }) >> json(CLIENT)
+
+        when:
+        namOAuthClientService.removeOAuthClient("theid").block()
+        namOAuthClientService.getOAuthClient("theid").block()
+
+        then:
+        1 * exchangeFunction.exchange({ it.method() == HttpMethod.DELETE }) >> Mono.just(ClientResponse.create(HttpStatus.NO_CONTENT).build())
+        1 * exchangeFunction.exchange({ it.method() == HttpMethod.GET }) >> json(CLIENT)
+    }
+
+    def "Bulk registration retries throttled registrations and reports each client"() {
+        given:
+        namOAuthClientService.bulkMinBackoff = Duration.ofMillis(1)
+        namOAuthClientService.bulkMaxRetries = 1
+        namOAuthClientService.bulkConcurrency = 1
+
+        when:
+        def registrations = namOAuthClientService.addOAuthClients(["a", "b"]).collectList().block()
+
+        then:
+        registrations.size() == 2
+        registrations.find { it.name == "a" }.successful
+        !registrations.find { it.name == "b" }.successful
+        1 * exchangeFunction.exchange({ it.url().path.endsWith("/token") }) >> json(TOKEN)
+        2 * exchangeFunction.exchange({ it.method() == HttpMethod.POST && it.url().path.endsWith("/clients/") }) >> status(HttpStatus.TOO_MANY_REQUESTS) >> json(CLIENT)
+        1 * exchangeFunction.exchange({ it.method() == HttpMethod.POST && it.url().path.endsWith("/clients/") }) >> status(HttpStatus.BAD_REQUEST)
+    }
+
+    def "Bulk registration does not repeat a registration that failed with a server error"() {
+        given:
+        namOAuthClientService.bulkMinBackoff = Duration.ofMillis(1)
+        namOAuthClientService.bulkMaxRetries = 3
+
+        when:
+        def registrations = namOAuthClientService.addOAuthClients(["a"]).collectList().block()
+
+        then:
+        !registrations.first().successful
+        1 * exchangeFunction.exchange({ it.url().path.endsWith("/token") }) >> json(TOKEN)
+        1 * exchangeFunction.exchange({ it.method() == HttpMethod.POST && it.url().path.endsWith("/clients/") }) >> status(HttpStatus.BAD_GATEWAY)
+    }
+
+    def "Bulk removal treats unknown clients as removed and reports failures"() {
+        given:
+        namOAuthClientService.bulkMinBackoff = Duration.ofMillis(1)
+        namOAuthClientService.bulkMaxRetries = 1
+        namOAuthClientService.bulkConcurrency = 1
+
+        when:
+        def removals = namOAuthClientService.removeOAuthClients(["a", "b", "c"]).collectList().block()
+
+        then:
+        removals*.clientId as Set == ["a", "b", "c"] as Set
+        removals.find { it.clientId == "a" }.successful
+        removals.find { it.clientId == "b" }.successful
+        !removals.find { it.clientId == "c" }.successful
+        1 * exchangeFunction.exchange({ it.url().path.endsWith("/token") }) >> json(TOKEN)
+        1 * exchangeFunction.exchange({ it.method() == HttpMethod.DELETE && it.url().path.endsWith("/a") }) >> status(HttpStatus.OK)
+        1 * exchangeFunction.exchange({ it.method() == HttpMethod.DELETE && it.url().path.endsWith("/b") }) >> status(HttpStatus.NOT_FOUND)
+        2 * exchangeFunction.exchange({ it.method() == HttpMethod.DELETE && it.url().path.endsWith("/c") }) >> status(HttpStatus.SERVICE_UNAVAILABLE)
+    }
+
+    private static Mono<ClientResponse> status(HttpStatus status) {
+        Mono.just(ClientResponse.create(status).build())
+    }
+
+    private static Mono<ClientResponse> json(String body) {
+        Mono.just(ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body)
+                .build())
+    }
+}